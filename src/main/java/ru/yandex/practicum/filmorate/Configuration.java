@@ -12,4 +12,11 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 public class Configuration {
     public static final int FILM_DESCRIPTION_LENGTH = 200;
     private int defaultTopFilmCount;
+    private int maxPageSize;
+    private int exportChunkSize;
+    private int maxBatchSize;
+    private int defaultFriendSuggestionsCount;
+    private int friendSuggestionsWorkLimit;
+    private int defaultRecommendationsCount;
+    private int recommendationsWorkLimit;
 }
\ No newline at end of file
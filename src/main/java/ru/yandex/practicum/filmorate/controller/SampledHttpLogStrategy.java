@@ -0,0 +1,109 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import jakarta.servlet.ServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Precorrelation;
+import org.zalando.logbook.Sink;
+import org.zalando.logbook.Strategy;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Выборочное логирование HTTP-обмена в Logbook ({@code filmorate.http-log.*}).
+ * <p>
+ * В лог попадает доля запросов sample-rate; для отдельных путей долю задаёт route-sample-rates
+ * ("/films/popular=0.01,/actuator=0", побеждает самый длинный префикс). Тела буферизуются только
+ * у попавших в выборку запросов, поэтому остальные не копируют ответ. Ответы со статусом не ниже
+ * always-log-status пишутся всегда, но у запросов вне выборки - без тел.
+ * Запрос и ответ пишутся одной записью после ответа.
+ */
+@Component
+public class SampledHttpLogStrategy implements Strategy {
+
+    private static final String SAMPLED_ATTRIBUTE = SampledHttpLogStrategy.class.getName() + ".sampled";
+
+    private final double sampleRate;
+    // от длинных префиксов к коротким
+    private final Map<String, Double> routeSampleRates = new LinkedHashMap<>();
+    private final int alwaysLogStatus;
+
+    public SampledHttpLogStrategy(@Value("${filmorate.http-log.sample-rate:1.0}") double sampleRate,
+                                  @Value("${filmorate.http-log.route-sample-rates:}") String[] routeSampleRates,
+                                  @Value("${filmorate.http-log.always-log-status:400}") int alwaysLogStatus) {
+        this.sampleRate = sampleRate;
+        this.alwaysLogStatus = alwaysLogStatus;
+
+        Map<String, Double> rates = new LinkedHashMap<>();
+        for (String route : routeSampleRates) {
+            String[] pathAndRate = route.split("=");
+            if (pathAndRate.length != 2) {
+                throw new IllegalArgumentException("Route sample rate must look like /path=rate: " + route);
+            }
+            rates.put(pathAndRate[0].trim(), Double.parseDouble(pathAndRate[1].trim()));
+        }
+        rates.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByKey(Comparator.comparingInt(String::length)).reversed())
+                .forEach(rate -> this.routeSampleRates.put(rate.getKey(), rate.getValue()));
+    }
+
+    public double getSampleRate(String path) {
+        for (Map.Entry<String, Double> rate : routeSampleRates.entrySet()) {
+            String prefix = rate.getKey();
+            if (path.startsWith(prefix) && (path.length() == prefix.length() || path.charAt(prefix.length()) == '/')) {
+                return rate.getValue();
+            }
+        }
+        return sampleRate;
+    }
+
+    @Override
+    public HttpRequest process(HttpRequest request) throws IOException {
+        return isSampled(request) ? request.withBody() : request.withoutBody();
+    }
+
+    @Override
+    public void write(Precorrelation precorrelation, HttpRequest request, Sink sink) {
+        // статус ещё неизвестен, запрос пишется вместе с ответом
+    }
+
+    @Override
+    public HttpResponse process(HttpRequest request, HttpResponse response) throws IOException {
+        return isSampled(request) ? response.withBody() : response.withoutBody();
+    }
+
+    @Override
+    public void write(Correlation correlation, HttpRequest request, HttpResponse response, Sink sink)
+            throws IOException {
+        if (isSampled(request)) {
+            sink.writeBoth(correlation, request, response);
+        } else if (response.getStatus() >= alwaysLogStatus) {
+            sink.writeBoth(correlation, request.withoutBody(), response.withoutBody());
+        }
+    }
+
+    // решение запоминается в атрибуте запроса: тело ответа нужно буферизовать до того, как известен статус
+    private boolean isSampled(HttpRequest request) {
+        if (!(request instanceof ServletRequest servletRequest)) {
+            return sample(request.getPath());
+        }
+        Object sampled = servletRequest.getAttribute(SAMPLED_ATTRIBUTE);
+        if (sampled == null) {
+            sampled = sample(request.getPath());
+            servletRequest.setAttribute(SAMPLED_ATTRIBUTE, sampled);
+        }
+        return (Boolean) sampled;
+    }
+
+    private boolean sample(String path) {
+        double rate = getSampleRate(path);
+        return rate >= 1 || rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+}
@@ -1,14 +1,27 @@
 package ru.yandex.practicum.filmorate.controller.film;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.dto.PageResponseDTO;
 import ru.yandex.practicum.filmorate.dto.film.FilmResponseDTO;
 import ru.yandex.practicum.filmorate.dto.film.NewFilmRequestDTO;
 import ru.yandex.practicum.filmorate.dto.film.UpdateFilmRequestDTO;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.Collection;
+import java.util.List;
 
 @RestController
 @RequestMapping("/films")
@@ -16,6 +29,7 @@ import java.util.Collection;
 public class FilmController {
 
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
 
     @PostMapping
@@ -23,6 +37,27 @@ public class FilmController {
         return filmService.createFilm(newFilmDTO);
     }
 
+    @PostMapping(path = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<Long> createFilms(@RequestBody List<NewFilmRequestDTO> newFilmDTOs) {
+        return filmService.createFilms(newFilmDTOs.iterator());
+    }
+
+    @PostMapping(path = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public List<Long> createFilmsFromNdjson(InputStream body) throws IOException {
+        try (MappingIterator<NewFilmRequestDTO> newFilmDTOs =
+                     objectMapper.readerFor(NewFilmRequestDTO.class).readValues(body)) {
+            return filmService.createFilms(newFilmDTOs);
+        } catch (JsonProcessingException e) {
+            throw new ValidationException("Malformed NDJSON: " + e.getOriginalMessage());
+        } catch (RuntimeException e) {
+            // MappingIterator оборачивает ошибки разбора следующих строк в непроверяемые исключения
+            if (e.getCause() instanceof JsonProcessingException cause) {
+                throw new ValidationException("Malformed NDJSON: " + cause.getOriginalMessage());
+            }
+            throw e;
+        }
+    }
+
     @PutMapping
     public FilmResponseDTO updateFilm(@RequestBody @Valid UpdateFilmRequestDTO filmToUpdate) {
         return filmService.updateFilm(filmToUpdate);
@@ -33,15 +68,44 @@ public class FilmController {
         return filmService.getFilms();
     }
 
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportFilms() {
+        StreamingResponseBody body = outputStream -> filmService.exportFilms(films -> {
+            try {
+                writeNdjson(films, outputStream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @GetMapping(params = "limit")
+    public PageResponseDTO<FilmResponseDTO> getFilmsPage(@RequestParam(defaultValue = "0") long after,
+                                                         @RequestParam int limit) {
+        return filmService.getFilmsPage(after, limit);
+    }
+
+    // курсор без размера страницы иначе попал бы в полный список и вернул всю таблицу
+    @GetMapping(params = {"after", "!limit"})
+    public PageResponseDTO<FilmResponseDTO> getFilmsPageWithoutLimit() {
+        throw new ValidationException("Page limit is required with the after cursor");
+    }
+
     @GetMapping("/{filmId}")
-    public FilmResponseDTO getFilById(@PathVariable long filmId) {
-        return filmService.getFilmById(filmId);
+    public FilmResponseDTO getFilById(@PathVariable long filmId,
+                                      @RequestParam(defaultValue = "ids") String likes) {
+        return filmService.getFilmById(filmId, likes);
     }
 
 
     @GetMapping("/popular")
-    public Collection<FilmResponseDTO> getTopFilms(@RequestParam(required = false) Integer count) {
-        return filmService.getTopFilms(count);
+    public Collection<FilmResponseDTO> getTopFilms(@RequestParam(required = false) Integer count,
+                                                   @RequestParam(defaultValue = "ids") String likes) {
+        return filmService.getTopFilms(count, likes);
     }
 
 
@@ -55,4 +119,11 @@ public class FilmController {
         filmService.deleteUserLike(filmId, userId);
     }
 
+    private void writeNdjson(Collection<FilmResponseDTO> films, OutputStream outputStream) throws IOException {
+        for (FilmResponseDTO film : films) {
+            outputStream.write(objectMapper.writeValueAsBytes(film));
+            outputStream.write('\n');
+        }
+        outputStream.flush();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.controller.film;
+
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.dto.film.FilmResponseDTO;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.util.Collection;
+
+@RestController
+@RequestMapping("/users")
+@AllArgsConstructor
+public class RecommendationController {
+
+    private final FilmService filmService;
+
+    @GetMapping("/{userId}/recommendations")
+    public Collection<FilmResponseDTO> getRecommendations(@PathVariable long userId,
+                                                          @RequestParam(required = false) Integer count) {
+        return filmService.getRecommendations(userId, count);
+    }
+}
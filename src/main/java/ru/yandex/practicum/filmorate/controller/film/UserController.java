@@ -3,9 +3,12 @@ package ru.yandex.practicum.filmorate.controller.film;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.dto.PageResponseDTO;
+import ru.yandex.practicum.filmorate.dto.user.FriendSuggestionResponseDTO;
 import ru.yandex.practicum.filmorate.dto.user.NewUserRequestDTO;
 import ru.yandex.practicum.filmorate.dto.user.UpdateUserRequestDTO;
 import ru.yandex.practicum.filmorate.dto.user.UserResponseDTO;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import java.util.Collection;
@@ -27,6 +30,18 @@ public class UserController {
         return userService.getUsers();
     }
 
+    @GetMapping(params = "limit")
+    public PageResponseDTO<UserResponseDTO> getUsersPage(@RequestParam(defaultValue = "0") long after,
+                                                         @RequestParam int limit) {
+        return userService.getUsersPage(after, limit);
+    }
+
+    // курсор без размера страницы иначе попал бы в полный список и вернул всю таблицу
+    @GetMapping(params = {"after", "!limit"})
+    public PageResponseDTO<UserResponseDTO> getUsersPageWithoutLimit() {
+        throw new ValidationException("Page limit is required with the after cursor");
+    }
+
     @GetMapping("/{userId}")
     public UserResponseDTO getUserById(@PathVariable long userId) {
         return userService.getUserById(userId);
@@ -42,6 +57,12 @@ public class UserController {
         return userService.getUserCommonFriends(userId, otherUserId);
     }
 
+    @GetMapping("/{userId}/friends/suggestions")
+    public Collection<FriendSuggestionResponseDTO> getFriendSuggestions(@PathVariable long userId,
+                                                                        @RequestParam(required = false) Integer count) {
+        return userService.getFriendSuggestions(userId, count);
+    }
+
     @PutMapping
     public UserResponseDTO updateUser(@RequestBody @Valid UpdateUserRequestDTO userToUpdate) {
         return userService.updateUser(userToUpdate);
@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * В режиме виртуальных потоков ({@code spring.threads.virtual.enabled}) оборачивает источник данных
+ * в {@link ConnectionLimitingDataSource}. По умолчанию лимит равен размеру пула Hikari,
+ * а время ожидания - его connection-timeout.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class ConnectionLimiterPostProcessor implements BeanPostProcessor {
+
+    private final int permits;
+    private final long acquireTimeoutMs;
+
+    public ConnectionLimiterPostProcessor(
+            @Value("${filmorate.connection-limiter.permits:${spring.datasource.hikari.maximum-pool-size:10}}")
+            int permits,
+            @Value("${filmorate.connection-limiter.acquire-timeout-ms:"
+                    + "${spring.datasource.hikari.connection-timeout:30000}}")
+            long acquireTimeoutMs) {
+        this.permits = permits;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && !(bean instanceof ConnectionLimitingDataSource)) {
+            log.info("Limiting data source {} to {} concurrent connections", beanName, permits);
+            return new ConnectionLimitingDataSource(dataSource, permits, acquireTimeoutMs);
+        }
+        return bean;
+    }
+}
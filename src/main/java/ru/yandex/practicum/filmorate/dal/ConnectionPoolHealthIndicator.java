@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.jdbc.DataSourceUnwrapper;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Насыщение пула соединений в /actuator/health ("connectionPool"). Пул считается исчерпанным (DOWN),
+ * когда заняты все соединения и больше pending-threshold потоков ждут соединения в пуле или
+ * разрешения {@link ConnectionLimitingDataSource}. Время ожидания в пуле, занятые и свободные соединения
+ * публикует сам Hikari (hikaricp.connections.*), ожидание разрешений - метрики filmorate.connection.limiter.*.
+ */
+@Component
+public class ConnectionPoolHealthIndicator implements HealthIndicator, MeterBinder {
+
+    private final HikariDataSource pool;
+    private final ConnectionLimitingDataSource limiter;
+    private final int pendingThreshold;
+
+    public ConnectionPoolHealthIndicator(DataSource dataSource,
+                                         @Value("${filmorate.pool-health.pending-threshold:0}") int pendingThreshold) {
+        this.pool = DataSourceUnwrapper.unwrap(dataSource, HikariConfigMXBean.class, HikariDataSource.class);
+        this.limiter = DataSourceUnwrapper.unwrap(dataSource, ConnectionLimitingDataSource.class);
+        this.pendingThreshold = pendingThreshold;
+    }
+
+    @Override
+    public Health health() {
+        HikariPoolMXBean poolMXBean = pool == null ? null : pool.getHikariPoolMXBean();
+        if (poolMXBean == null) {
+            return Health.unknown().withDetail("reason", "Hikari pool is not started").build();
+        }
+
+        int active = poolMXBean.getActiveConnections();
+        int maximum = pool.getMaximumPoolSize();
+        int pending = poolMXBean.getThreadsAwaitingConnection();
+        int limiterWaiting = limiter == null ? 0 : limiter.getWaitingCount();
+
+        boolean exhausted = active >= maximum && pending + limiterWaiting > pendingThreshold;
+        Health.Builder health = exhausted ? Health.down() : Health.up();
+        health.withDetail("pool", pool.getPoolName())
+                .withDetail("active", active)
+                .withDetail("idle", poolMXBean.getIdleConnections())
+                .withDetail("maximum", maximum)
+                .withDetail("pending", pending);
+        if (limiter != null) {
+            health.withDetail("limiterWaiting", limiterWaiting);
+        }
+        return health.build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (limiter == null) {
+            return;
+        }
+        FunctionTimer.builder("filmorate.connection.limiter.wait", limiter,
+                        ConnectionLimitingDataSource::getAcquireCount,
+                        ConnectionLimitingDataSource::getWaitNanos, TimeUnit.NANOSECONDS)
+                .description("Ожидание разрешения на соединение")
+                .register(registry);
+        Gauge.builder("filmorate.connection.limiter.waiting", limiter, ConnectionLimitingDataSource::getWaitingCount)
+                .description("Потоки, ждущие разрешения на соединение")
+                .register(registry);
+        Gauge.builder("filmorate.connection.limiter.active", limiter, ConnectionLimitingDataSource::getActiveCount)
+                .description("Выданные разрешения на соединение")
+                .register(registry);
+    }
+}
@@ -1,35 +1,52 @@
 package ru.yandex.practicum.filmorate.dal;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
-import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeSet;
 import ru.yandex.practicum.filmorate.model.MpaRate;
 
 import java.sql.Date;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.*;
 
 @Repository
 @RequiredArgsConstructor
 public class FilmRepository {
 
+    // фильм и его жанры за один запрос: жанры агрегируются в массивы в той же строке.
+    // Лайки читаются отдельно: у популярного фильма их больше, чем вмещает массив H2 (65536 элементов)
+    private static final String HYDRATED_FILMS_SELECT =
+            "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.mpa_rate, " +
+                    "m.name AS mpa_name, " +
+                    "(SELECT ARRAY_AGG(g.genre_id ORDER BY g.genre_id) FROM films_genres fg " +
+                    "JOIN genres g ON fg.genre_id = g.genre_id WHERE fg.film_id = f.film_id) AS genre_ids, " +
+                    "(SELECT ARRAY_AGG(g.name ORDER BY g.genre_id) FROM films_genres fg " +
+                    "JOIN genres g ON fg.genre_id = g.genre_id WHERE fg.film_id = f.film_id) AS genre_names " +
+                    "FROM films f LEFT JOIN mpa_rate m ON f.mpa_rate = m.mpa_id ";
+
+    // размер одного JDBC-пакета при массовой вставке
+    private static final int BATCH_SIZE = 1000;
+
     protected final JdbcTemplate jdbcTemplate;
     private final RowMapper<Film> filmRowMapper;
     private final RowMapper<MpaRate> mpaRateRowMapper;
     private final RowMapper<Genre> genreRowMapper;
+    private final ResultSetExtractor<List<Film>> filmResultSetExtractor;
 
     public long createFilm(Film newFilm) {
-
-        if (isMpaRateIndexNotOK(newFilm.getMpaRate().getId())) {
-            throw new NotFoundException("mpa_rate index = " + newFilm.getMpaRate().getId() + " not found");
-        }
-
         String sqlString = "INSERT INTO films(name, description, release_date, duration, mpa_rate) " +
                 "values (?, ?, ?, ?, ?)";
 
@@ -49,11 +66,6 @@ public class FilmRepository {
     }
 
     public boolean updateFilm(Film filmToUpdate) {
-
-        if (isMpaRateIndexNotOK(filmToUpdate.getMpaRate().getId())) {
-            throw new NotFoundException("mpa_rate index = " + filmToUpdate.getMpaRate().getId() + " not found");
-        }
-
         String sqlString = "UPDATE films SET name=?, description=?, release_date=?, duration=?, mpa_rate=?  WHERE film_id=" + filmToUpdate.getId();
 
         int answer = jdbcTemplate.update(sqlString,
@@ -103,6 +115,46 @@ public class FilmRepository {
     }
 
 
+    public boolean isFilmExist(long filmId) {
+        String query = "SELECT EXISTS(SELECT 1 FROM films WHERE film_id=?)";
+
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(query, Boolean.class, filmId));
+    }
+
+    // точечный поиск по первичному ключу (film_id, user_id), не зависит от числа лайков фильма
+    public boolean isFilmUserLikeExist(long filmId, long userId) {
+        String query = "SELECT EXISTS(SELECT 1 FROM films_likes WHERE film_id=? AND user_id=?)";
+
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(query, Boolean.class, filmId, userId));
+    }
+
+    public Optional<Film> getHydratedFilmById(long filmId) {
+        String queryFilm = HYDRATED_FILMS_SELECT + "WHERE f.film_id=?";
+
+        List<Film> films = jdbcTemplate.query(queryFilm, filmResultSetExtractor, filmId);
+
+        if (films == null) {
+            return Optional.empty();
+        }
+        return films.stream().findFirst();
+    }
+
+    public List<Film> getHydratedFilmsPage(long afterFilmId, int limit) {
+        // keyset-пагинация по первичному ключу: стоимость страницы не зависит от размера таблицы
+        String queryFilms = HYDRATED_FILMS_SELECT +
+                "WHERE f.film_id > ? " +
+                "ORDER BY f.film_id " +
+                "LIMIT ?";
+
+        List<Film> films = jdbcTemplate.query(queryFilms, filmResultSetExtractor, afterFilmId, limit);
+
+        if (films == null) {
+            return new ArrayList<>();
+        }
+        return films;
+    }
+
+
     private List<Long> getFilmLikes(Long filmId) {
         String queryLikes = "SELECT user_id FROM films_likes WHERE film_id=?";
 
@@ -137,19 +189,67 @@ public class FilmRepository {
     }
 
 
+    /**
+     * Добавляет фильмы пакетами по {@value #BATCH_SIZE} строк.
+     *
+     * @return сгенерированные id в порядке фильмов
+     */
+    public List<Long> createFilms(List<Film> newFilms) {
+        String sqlString = "INSERT INTO films(name, description, release_date, duration, mpa_rate) " +
+                "values (?, ?, ?, ?, ?)";
+
+        List<Long> filmIds = new ArrayList<>(newFilms.size());
+
+        for (int from = 0; from < newFilms.size(); from += BATCH_SIZE) {
+            List<Film> chunk = newFilms.subList(from, Math.min(from + BATCH_SIZE, newFilms.size()));
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+
+            jdbcTemplate.batchUpdate(
+                    connection -> connection.prepareStatement(sqlString, new String[]{"film_id"}),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement stmt, int i) throws SQLException {
+                            Film film = chunk.get(i);
+                            stmt.setString(1, film.getName());
+                            stmt.setString(2, film.getDescription());
+                            stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
+                            stmt.setInt(4, film.getDuration());
+                            stmt.setInt(5, film.getMpaRate().getId());
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return chunk.size();
+                        }
+                    },
+                    keyHolder);
+
+            keyHolder.getKeyList().forEach(keys -> filmIds.add(((Number) keys.get("film_id")).longValue()));
+        }
+
+        return filmIds;
+    }
+
     public void addFilmGenres(Long filmId, List<Genre> genres) {
+        addFilmsGenres(Map.of(filmId, genres));
+    }
+
+    public void addFilmsGenres(Map<Long, List<Genre>> genresByFilmId) {
         String sqlString = "INSERT INTO films_genres(film_id, genre_id) " +
                 "values (?, ?)";
 
-        genres.stream()
+        List<long[]> rows = new ArrayList<>();
+        genresByFilmId.forEach((filmId, genres) -> genres.stream()
+                .mapToInt(Genre::getId)
                 .distinct()  // добавляем только уникальные жанры
-                .forEach(genre -> {
-                    if (!isGenreIndexOK(genre.getId())) {
-                        throw new NotFoundException("genre_id index = " + genre.getId() + " not found");
-                    }
-                    jdbcTemplate.update(sqlString, filmId, genre.getId());
+                .forEach(genreId -> rows.add(new long[]{filmId, genreId})));
 
-                });
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(sqlString, rows, BATCH_SIZE, (stmt, row) -> {
+                stmt.setLong(1, row[0]);
+                stmt.setInt(2, (int) row[1]);
+            });
+        }
     }
 
     public List<Genre> getFilmGenres(Long filmId) {
@@ -167,10 +267,56 @@ public class FilmRepository {
         return jdbcTemplate.update(sqlString, filmId, userId);
     }
 
-    public List<Long> getFilmUserLikes(long filmId) {
-        String queryFilmUserLikes = "SELECT user_id FROM films_likes WHERE film_id=?";
+    /**
+     * Записывает накопленные лайки и снятия лайков пакетами по {@value #BATCH_SIZE} строк.
+     * Всё записывается одной транзакцией; обе операции идемпотентны, поэтому сброс можно повторить после ошибки.
+     *
+     * @param likes   пары {film_id, user_id}, которые должны быть в films_likes
+     * @param unlikes пары {film_id, user_id}, которых в films_likes быть не должно
+     * @param handler получает пары, для которых строка действительно добавлена (+1) или удалена (-1)
+     */
+    @Transactional
+    public void applyFilmUserLikes(List<long[]> likes, List<long[]> unlikes, LikeCountHandler handler) {
+        String insertSql = "INSERT INTO films_likes(film_id, user_id) SELECT ?, ? " +
+                "WHERE NOT EXISTS(SELECT 1 FROM films_likes WHERE film_id=? AND user_id=?)";
+        String deleteSql = "DELETE FROM films_likes WHERE film_id=? AND user_id=?";
+
+        applyLikeBatches(insertSql, likes, 1, handler, (stmt, row) -> {
+            stmt.setLong(1, row[0]);
+            stmt.setLong(2, row[1]);
+            stmt.setLong(3, row[0]);
+            stmt.setLong(4, row[1]);
+        });
+        applyLikeBatches(deleteSql, unlikes, -1, handler, (stmt, row) -> {
+            stmt.setLong(1, row[0]);
+            stmt.setLong(2, row[1]);
+        });
+    }
 
-        return jdbcTemplate.queryForList(queryFilmUserLikes, Long.class, filmId);
+    private void applyLikeBatches(String sql, List<long[]> rows, int delta, LikeCountHandler handler,
+                                  ParameterizedPreparedStatementSetter<long[]> setter) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        int[][] updated = jdbcTemplate.batchUpdate(sql, rows, BATCH_SIZE, setter);
+
+        for (int batch = 0; batch < updated.length; batch++) {
+            for (int i = 0; i < updated[batch].length; i++) {
+                if (updated[batch][i] > 0) {
+                    long[] row = rows.get(batch * BATCH_SIZE + i);
+                    handler.accept(row[0], row[1], delta);
+                }
+            }
+        }
+    }
+
+    // строки читаются прямо в массив long, без промежуточного списка Long
+    public LikeSet getFilmUserLikes(long filmId) {
+        String queryFilmUserLikes = "SELECT user_id FROM films_likes WHERE film_id=? ORDER BY user_id";
+
+        LikeSet.Builder likes = new LikeSet.Builder();
+        jdbcTemplate.query(queryFilmUserLikes, (RowCallbackHandler) rs -> likes.add(rs.getLong("user_id")), filmId);
+        return likes.build();
     }
 
     public Collection<Film> getAllFilms() {
@@ -179,41 +325,72 @@ public class FilmRepository {
         return jdbcTemplate.query(sqlString, filmRowMapper);
     }
 
-    private boolean isMpaRateIndexNotOK(int mpaRateIndex) {
-        String sqlString = "SELECT Count(MPA_ID) FROM mpa_rate";
-        Integer count;
+    /**
+     * Потоково передаёт все лайки в порядке первичного ключа (film_id, user_id).
+     */
+    public void forEachLike(int fetchSize, LikeHandler likeHandler) {
+        String sqlString = "SELECT film_id, user_id FROM films_likes ORDER BY film_id, user_id";
 
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sqlString,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(fetchSize);
+            return stmt;
+        }, (RowCallbackHandler) rs -> likeHandler.accept(rs.getLong("film_id"), rs.getLong("user_id")));
+    }
 
-        count = jdbcTemplate.queryForObject(sqlString, Integer.class);
-
-        if (count == null) {
-            return false;
+    public Collection<Film> getFilmsByIds(Collection<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return new ArrayList<>();
         }
 
-        return mpaRateIndex > count;
+        String inClause = String.join(",", Collections.nCopies(filmIds.size(), "?"));
+        String query = "SELECT film_id, name, description, release_date, duration, mpa_rate FROM films " +
+                "WHERE film_id IN (" + inClause + ")";
+
+        return jdbcTemplate.query(query, filmRowMapper, filmIds.toArray());
     }
 
-    private boolean isGenreIndexOK(int genreIndex) {
-        String sqlString = "SELECT COUNT(genre_id) FROM genres";
-        Integer count;
+    public Map<Long, Long> getFilmLikesCounts() {
+        String query = "SELECT f.film_id, COUNT(fl.user_id) AS likes_count FROM films f " +
+                "LEFT JOIN films_likes fl ON f.film_id = fl.film_id " +
+                "GROUP BY f.film_id";
 
-        count = jdbcTemplate.queryForObject(sqlString, Integer.class);
+        Map<Long, Long> result = new HashMap<>();
 
-        if (count == null) {
-            return false;
-        }
+        jdbcTemplate.query(query, rs -> {
+            result.put(rs.getLong("film_id"), rs.getLong("likes_count"));
+        });
+
+        return result;
+    }
 
-        return !(genreIndex > count);
+    // сохранённые счётчики films.like_count, без агрегации по films_likes
+    public Map<Long, Long> getStoredLikesCounts() {
+        String query = "SELECT film_id, like_count FROM films";
 
+        Map<Long, Long> result = new HashMap<>();
+        jdbcTemplate.query(query, (RowCallbackHandler) rs -> result.put(rs.getLong("film_id"), rs.getLong("like_count")));
+        return result;
     }
 
-    public Collection<Film> getTopFilms(int count) {
-        String getTopSql = "SELECT f.* FROM films f " +
-                "JOIN films_likes fl ON f.film_id = fl.film_id " +
-                "GROUP BY f.film_id " +
-                "ORDER BY COUNT(user_id) DESC " +
-                "LIMIT ?";
-        return jdbcTemplate.query(getTopSql, filmRowMapper, count);
+    public void updateStoredLikesCounts(Map<Long, Long> likesCountByFilmId) {
+        String sqlString = "UPDATE films SET like_count=? WHERE film_id=?";
+
+        List<Map.Entry<Long, Long>> rows = new ArrayList<>(likesCountByFilmId.entrySet());
+        jdbcTemplate.batchUpdate(sqlString, rows, BATCH_SIZE, (stmt, row) -> {
+            stmt.setLong(1, row.getValue());
+            stmt.setLong(2, row.getKey());
+        });
+    }
+
+    public Optional<Long> getFilmLikesCount(long filmId) {
+        String query = "SELECT COUNT(fl.user_id) FROM films f " +
+                "LEFT JOIN films_likes fl ON f.film_id = fl.film_id " +
+                "WHERE f.film_id=? " +
+                "GROUP BY f.film_id";
+
+        return jdbcTemplate.queryForList(query, Long.class, filmId).stream().findFirst();
     }
 
     public boolean deleteUserLike(long filmId, long userId) {
@@ -224,22 +401,16 @@ public class FilmRepository {
         return jdbcTemplate.update(deleteUserLikeSql, filmId, userId) > 0;
     }
 
+    /**
+     * Жанры фильмов пачками по {@value #BATCH_SIZE} id, как и {@link #getFilmLikesByFilmIds}.
+     */
     public Map<Long, List<Genre>> getFilmGenresByFilmIds(Collection<Long> filmIds) {
-        if (filmIds.isEmpty()) {
-            return Collections.emptyMap();
-        }
+        Map<Long, List<Genre>> result = new HashMap<>();
 
-        String inClause = String.join(",", Collections.nCopies(filmIds.size(), "?"));
-        String query = "SELECT fg.film_id, g.genre_id, g.name " +
+        queryByFilmIdChunks(filmIds, "SELECT fg.film_id, g.genre_id, g.name " +
                 "FROM films_genres fg " +
                 "JOIN genres g ON fg.genre_id = g.genre_id " +
-                "WHERE fg.film_id IN (" + inClause + ") " +
-                "ORDER BY fg.film_id, g.genre_id";
-
-        Map<Long, List<Genre>> result = new HashMap<>();
-
-        jdbcTemplate.query(query, filmIds.toArray(), rs -> {
-            Long filmId = rs.getLong("film_id");
+                "WHERE fg.film_id", "ORDER BY fg.film_id, g.genre_id", (filmId, rs) -> {
             Genre genre = new Genre(
                     rs.getInt("genre_id"),
                     rs.getString("name")
@@ -251,24 +422,70 @@ public class FilmRepository {
         return result;
     }
 
-    public Map<Long, Set<Long>> getFilmLikesByFilmIds(Collection<Long> filmIds) {
-        if (filmIds.isEmpty()) {
-            return Collections.emptyMap();
-        }
+    /**
+     * Лайки фильмов пачками по {@value #BATCH_SIZE} id.
+     */
+    public Map<Long, LikeSet> getFilmLikesByFilmIds(Collection<Long> filmIds) {
+        Map<Long, LikeSet.Builder> likesByFilmId = new HashMap<>();
 
-        String inClause = String.join(",", Collections.nCopies(filmIds.size(), "?"));
-        String query = "SELECT film_id, user_id FROM films_likes " +
-                "WHERE film_id IN (" + inClause + ")";
+        queryByFilmIdChunks(filmIds, "SELECT film_id, user_id FROM films_likes WHERE film_id", "",
+                (filmId, rs) -> likesByFilmId.computeIfAbsent(filmId, id -> new LikeSet.Builder())
+                        .add(rs.getLong("user_id")));
 
-        Map<Long, Set<Long>> result = new HashMap<>();
+        Map<Long, LikeSet> result = new HashMap<>();
+        likesByFilmId.forEach((filmId, likes) -> result.put(filmId, likes.build()));
+        return result;
+    }
 
-        jdbcTemplate.query(query, filmIds.toArray(), rs -> {
-            Long filmId = rs.getLong("film_id");
-            Long userId = rs.getLong("user_id");
+    /**
+     * Читает строки фильмов пачками по {@value #BATCH_SIZE} отсортированных id, чтобы размер запроса
+     * не рос с каталогом. Плотная пачка читается одним диапазонным запросом по ключу, строки фильмов
+     * не из пачки отбрасываются. Разреженная пачка читается точечно через IN, чтобы не сканировать
+     * строки чужих фильмов между её id.
+     *
+     * @param select  запрос, оканчивающийся столбцом film_id, к которому дописывается условие
+     * @param orderBy порядок строк внутри пачки или пустая строка
+     */
+    private void queryByFilmIdChunks(Collection<Long> filmIds, String select, String orderBy, FilmRowHandler handler) {
+        List<Long> ids = filmIds.stream().distinct().sorted().toList();
+
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+            Set<Long> chunkIds = new HashSet<>(chunk);
+            RowCallbackHandler rowHandler = rs -> {
+                long filmId = rs.getLong("film_id");
+                if (chunkIds.contains(filmId)) {
+                    handler.accept(filmId, rs);
+                }
+            };
+
+            if (isDense(chunk)) {
+                jdbcTemplate.query(select + " BETWEEN ? AND ? " + orderBy, rowHandler,
+                        chunk.getFirst(), chunk.getLast());
+            } else {
+                String inClause = String.join(",", Collections.nCopies(chunk.size(), "?"));
+                jdbcTemplate.query(select + " IN (" + inClause + ") " + orderBy, rowHandler, chunk.toArray());
+            }
+        }
+    }
 
-            result.computeIfAbsent(filmId, k -> new HashSet<>()).add(userId);
-        });
+    // диапазон пачки не более чем вдвое шире числа её id
+    private static boolean isDense(List<Long> sortedIds) {
+        return sortedIds.getLast() - sortedIds.getFirst() < 2L * sortedIds.size();
+    }
 
-        return result;
+    @FunctionalInterface
+    private interface FilmRowHandler {
+        void accept(long filmId, ResultSet rs) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface LikeHandler {
+        void accept(long filmId, long userId);
+    }
+
+    @FunctionalInterface
+    public interface LikeCountHandler {
+        void accept(long filmId, long userId, int delta);
     }
-}
\ No newline at end of file
+}
@@ -12,18 +12,25 @@ import ru.yandex.practicum.filmorate.model.User;
 
 import java.sql.Date;
 import java.sql.PreparedStatement;
-import java.util.Collection;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
 
 @Slf4j
 @Repository
 @RequiredArgsConstructor
 public class UserRepository {
+
+    // ограничивает размер одного запроса, чтобы он не рос вместе с таблицей
+    private static final int FRIENDS_CHUNK_SIZE = 1000;
+
     protected final JdbcTemplate jdbcTemplate;
     private final RowMapper<User> userRowMapper;
 
+    public boolean isUserExist(long userId) {
+        String sqlString = "SELECT EXISTS(SELECT 1 FROM users WHERE user_id=?)";
+
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sqlString, Boolean.class, userId));
+    }
+
     public Optional<User> getUserById(long userId) {
 
         String sqlString = "SELECT user_id, name, email, login, birthday FROM users WHERE user_id=?";
@@ -44,6 +51,28 @@ public class UserRepository {
         return jdbcTemplate.query(sqlString, userRowMapper);
     }
 
+    public List<User> getUsersPage(long afterUserId, int limit) {
+        String sqlString = "SELECT user_id, name, email, login, birthday FROM users " +
+                "WHERE user_id > ? " +
+                "ORDER BY user_id " +
+                "LIMIT ?";
+
+        return jdbcTemplate.query(sqlString, userRowMapper, afterUserId, limit);
+    }
+
+    // для небольших наборов id, например страницы рекомендаций
+    public List<User> getUsersByIds(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String placeholders = String.join(", ", Collections.nCopies(userIds.size(), "?"));
+        String sqlString = "SELECT user_id, name, email, login, birthday FROM users " +
+                "WHERE user_id IN (" + placeholders + ")";
+
+        return jdbcTemplate.query(sqlString, userRowMapper, userIds.toArray());
+    }
+
     public long createUser(User newUser) {
 
         String sqlString = "INSERT INTO users(name, email, login, birthday) " +
@@ -80,6 +109,65 @@ public class UserRepository {
         return jdbcTemplate.query(sqlString, userRowMapper, userId);
     }
 
+    // общие друзья - пересечение двух списков смежности по первичному ключу users_friends
+    public List<User> getCommonFriends(long userId, long otherUserId) {
+        String sqlString = "SELECT u.* FROM users_friends uf " +
+                "JOIN users_friends ouf ON ouf.user_id = ? AND ouf.friend_id = uf.friend_id " +
+                "JOIN users u ON u.user_id = uf.friend_id " +
+                "WHERE uf.user_id = ? " +
+                "ORDER BY u.user_id";
+
+        return jdbcTemplate.query(sqlString, userRowMapper, otherUserId, userId);
+    }
+
+    public Set<Long> getUserFriendIds(long userId) {
+        String sqlString = "SELECT friend_id FROM users_friends WHERE user_id=?";
+
+        return new HashSet<>(jdbcTemplate.queryForList(sqlString, Long.class, userId));
+    }
+
+    /**
+     * Друзья пользователей пачками по {@value #FRIENDS_CHUNK_SIZE} id. Пачка отсортированных id читается
+     * одним диапазонным запросом по первичному ключу, строки чужих пользователей из диапазона отбрасываются.
+     * Для страниц и полного списка пользователей диапазон совпадает с пачкой.
+     */
+    public Map<Long, Set<Long>> getFriendIdsByUserIds(Collection<Long> userIds) {
+        String sqlString = "SELECT user_id, friend_id FROM users_friends WHERE user_id BETWEEN ? AND ?";
+
+        Map<Long, Set<Long>> result = new HashMap<>();
+        List<Long> ids = userIds.stream().sorted().toList();
+
+        for (int from = 0; from < ids.size(); from += FRIENDS_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + FRIENDS_CHUNK_SIZE, ids.size()));
+            Set<Long> chunkIds = new HashSet<>(chunk);
+
+            jdbcTemplate.query(sqlString, rs -> {
+                long userId = rs.getLong("user_id");
+                if (chunkIds.contains(userId)) {
+                    result.computeIfAbsent(userId, k -> new HashSet<>()).add(rs.getLong("friend_id"));
+                }
+            }, chunk.getFirst(), chunk.getLast());
+        }
+
+        return result;
+    }
+
+    /**
+     * Потоково передаёт все связи дружбы в порядке первичного ключа (user_id, friend_id),
+     * не собирая таблицу в памяти целиком.
+     */
+    public void forEachFriendship(FriendshipHandler handler) {
+        String sqlString = "SELECT user_id, friend_id FROM users_friends ORDER BY user_id, friend_id";
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sqlString);
+            stmt.setFetchSize(FRIENDS_CHUNK_SIZE);
+            return stmt;
+        }, rs -> {
+            handler.accept(rs.getLong("user_id"), rs.getLong("friend_id"));
+        });
+    }
+
     public boolean deleteFriend(long userId, long friendId) {
         String sqlString = "DELETE FROM users_friends WHERE user_id=? AND friend_id=?";
 
@@ -99,4 +187,9 @@ public class UserRepository {
 
         return answer == 1;
     }
+
+    @FunctionalInterface
+    public interface FriendshipHandler {
+        void accept(long userId, long friendId);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,258 @@
+package ru.yandex.practicum.filmorate.dal.stats;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Статистика запросов к базе по именам вида {@code film.getTopFilms}: вызовы, ошибки, строки и гистограмма
+ * времени выполнения. Запись - несколько LongAdder без блокировок и аллокаций.
+ * <p>
+ * Для HTTP-запроса, внутри которого выполнено больше request-query-threshold запросов к базе
+ * (признак N+1), в лог пишется предупреждение с самым частым запросом, а эндпоинт запоминается.
+ * Данные доступны в /actuator/queries и как метрики filmorate.query.
+ */
+@Slf4j
+@Component
+public class QueryStats implements MeterBinder {
+
+    // корзина i - время до 2^i мкс, последняя - всё, что дольше
+    private static final int BUCKETS = 25;
+
+    private final int requestQueryThreshold;
+    private final Map<String, Query> queries = new ConcurrentHashMap<>();
+    private final Map<String, Suspect> suspects = new ConcurrentHashMap<>();
+    private final ThreadLocal<RequestQueries> currentRequest = new ThreadLocal<>();
+    private volatile MeterRegistry registry;
+
+    public QueryStats(@Value("${filmorate.query-stats.request-query-threshold:20}") int requestQueryThreshold) {
+        this.requestQueryThreshold = requestQueryThreshold;
+    }
+
+    public int getRequestQueryThreshold() {
+        return requestQueryThreshold;
+    }
+
+    public Query query(String name) {
+        Query query = queries.get(name);
+        if (query != null) {
+            return query;
+        }
+        return queries.computeIfAbsent(name, key -> {
+            Query created = new Query(key);
+            MeterRegistry current = registry;
+            if (current != null) {
+                created.bindTo(current);
+            }
+            return created;
+        });
+    }
+
+    public void record(Query query, long nanos, long rows, boolean failed) {
+        query.record(nanos, rows, failed);
+
+        RequestQueries request = currentRequest.get();
+        if (request != null) {
+            request.count++;
+            request.byName.merge(query.name, 1, Integer::sum);
+        }
+    }
+
+    public Collection<Query> getQueries() {
+        return queries.values();
+    }
+
+    public Optional<Query> getQuery(String name) {
+        return Optional.ofNullable(queries.get(name));
+    }
+
+    public Collection<Suspect> getSuspects() {
+        return suspects.values();
+    }
+
+    public void reset() {
+        queries.values().forEach(Query::reset);
+        suspects.clear();
+    }
+
+    /**
+     * Начинает подсчёт запросов к базе в текущем потоке.
+     */
+    public void startRequest() {
+        currentRequest.set(new RequestQueries());
+    }
+
+    /**
+     * Заканчивает подсчёт и отмечает эндпоинт, если запросов к базе было больше порога.
+     *
+     * @return количество запросов к базе за HTTP-запрос
+     */
+    public int finishRequest(String endpoint) {
+        RequestQueries request = currentRequest.get();
+        currentRequest.remove();
+        if (request == null || request.count <= requestQueryThreshold) {
+            return request == null ? 0 : request.count;
+        }
+
+        Map.Entry<String, Integer> top = Collections.max(request.byName.entrySet(), Map.Entry.comparingByValue());
+        suspects.computeIfAbsent(endpoint, Suspect::new).record(request.count, top.getKey());
+        log.warn("Possible N+1: {} ran {} queries, {} ran {} times",
+                endpoint, request.count, top.getKey(), top.getValue());
+        return request.count;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        queries.values().forEach(query -> query.bindTo(registry));
+    }
+
+    private static final class RequestQueries {
+        private final Map<String, Integer> byName = new HashMap<>();
+        private int count;
+    }
+
+    public static final class Query {
+        private final String name;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        private Query(String name) {
+            this.name = name;
+            Arrays.setAll(buckets, i -> new LongAdder());
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * @return верхняя граница корзины гистограммы, в которую попадает доля quantile вызовов, мкс
+         */
+        public long getPercentileMicros(double quantile) {
+            long[] counts = getHistogram();
+            long total = Arrays.stream(counts).sum();
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return getBucketBoundMicros(i);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return количество вызовов по корзинам, границы - {@link #getBucketBoundMicros(int)}
+         */
+        public long[] getHistogram() {
+            return Arrays.stream(buckets).mapToLong(LongAdder::sum).toArray();
+        }
+
+        public static long getBucketBoundMicros(int bucket) {
+            return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+        }
+
+        private void record(long nanos, long rowCount, boolean failed) {
+            calls.increment();
+            if (failed) {
+                errors.increment();
+            }
+            rows.add(rowCount);
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            // число значащих бит - номер степени двойки, до которой дотягивает время в мкс
+            int bucket = 64 - Long.numberOfLeadingZeros(nanos / 1000);
+            buckets[Math.min(bucket, BUCKETS - 1)].increment();
+        }
+
+        private void reset() {
+            calls.reset();
+            errors.reset();
+            rows.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            Arrays.stream(buckets).forEach(LongAdder::reset);
+        }
+
+        private void bindTo(MeterRegistry registry) {
+            FunctionTimer.builder("filmorate.query", this, Query::getCalls, Query::getTotalNanos,
+                            TimeUnit.NANOSECONDS)
+                    .tag("query", name)
+                    .description("Запросы к базе")
+                    .register(registry);
+            FunctionCounter.builder("filmorate.query.rows", this, Query::getRows)
+                    .tag("query", name)
+                    .description("Строки, возвращённые или изменённые запросами")
+                    .register(registry);
+        }
+    }
+
+    public static final class Suspect {
+        private final String endpoint;
+        private final LongAdder requests = new LongAdder();
+        private final LongAccumulator maxQueries = new LongAccumulator(Long::max, 0);
+        private volatile String topQuery;
+
+        private Suspect(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        public long getMaxQueries() {
+            return maxQueries.get();
+        }
+
+        public String getTopQuery() {
+            return topQuery;
+        }
+
+        private void record(int queries, String query) {
+            requests.increment();
+            maxQueries.accumulate(queries);
+            topQuery = query;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ru.yandex.practicum.filmorate.dal.stats;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AbstractPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Repository;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Замеряет публичные методы репозиториев из пакета dal и пишет их в {@link QueryStats}.
+ * Имя запроса - имя репозитория без суффикса Repository и имя метода: FilmRepository.getTopFilms -
+ * film.getTopFilms. Строки считаются по результату: размер коллекции или карты, 0 или 1 для Optional,
+ * одна строка для скалярного результата; у методов, отдающих строки в обработчик, строк нет.
+ * <p>
+ * Обычный перехватчик, а не аспект AspectJ: без объекта точки соединения и сигнатуры на каждый вызов.
+ */
+@Component
+@ConditionalOnProperty(name = "filmorate.query-stats.enabled", havingValue = "true", matchIfMissing = true)
+public class QueryStatsAdvisor extends AbstractPointcutAdvisor {
+
+    private static final String REPOSITORY_PACKAGE = "ru.yandex.practicum.filmorate.dal";
+
+    private final QueryStats queryStats;
+    private final Map<Method, QueryStats.Query> queriesByMethod = new ConcurrentHashMap<>();
+    private final MethodInterceptor interceptor = this::record;
+    private final StaticMethodMatcherPointcut pointcut = new StaticMethodMatcherPointcut() {
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return targetClass.isAnnotationPresent(Repository.class)
+                    && targetClass.getPackageName().startsWith(REPOSITORY_PACKAGE)
+                    && Modifier.isPublic(method.getModifiers())
+                    && method.getDeclaringClass() != Object.class;
+        }
+    };
+
+    public QueryStatsAdvisor(QueryStats queryStats) {
+        this.queryStats = queryStats;
+    }
+
+    @Override
+    public StaticMethodMatcherPointcut getPointcut() {
+        return pointcut;
+    }
+
+    @Override
+    public MethodInterceptor getAdvice() {
+        return interceptor;
+    }
+
+    private Object record(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        QueryStats.Query query = queriesByMethod.get(method);
+        if (query == null) {
+            query = queriesByMethod.computeIfAbsent(method, key -> queryStats.query(queryName(key)));
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        Object result = null;
+        try {
+            result = invocation.proceed();
+            failed = false;
+            return result;
+        } finally {
+            queryStats.record(query, System.nanoTime() - start, rows(result), failed);
+        }
+    }
+
+    private static String queryName(Method method) {
+        String repository = method.getDeclaringClass().getSimpleName().replaceFirst("Repository$", "");
+        return Character.toLowerCase(repository.charAt(0)) + repository.substring(1) + "." + method.getName();
+    }
+
+    private static long rows(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Map<?, ?> map) {
+            return map.size();
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.dal.stats;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * /actuator/queries - запросы к базе, самые затратные по суммарному времени первыми, и эндпоинты
+ * с подозрением на N+1; /actuator/queries/{name} - запрос с гистограммой времени;
+ * DELETE /actuator/queries - сброс статистики.
+ */
+@Component
+@Endpoint(id = "queries")
+@RequiredArgsConstructor
+public class QueryStatsEndpoint {
+
+    private final QueryStats queryStats;
+
+    @ReadOperation
+    public QueriesReport queries() {
+        List<QueryReport> queries = queryStats.getQueries().stream()
+                .filter(query -> query.getCalls() > 0)
+                .sorted(Comparator.comparingLong(QueryStats.Query::getTotalNanos).reversed())
+                .map(QueryReport::of)
+                .toList();
+        List<SuspectReport> suspects = queryStats.getSuspects().stream()
+                .sorted(Comparator.comparingLong(QueryStats.Suspect::getMaxQueries).reversed())
+                .map(suspect -> new SuspectReport(suspect.getEndpoint(), suspect.getRequests(),
+                        suspect.getMaxQueries(), suspect.getTopQuery()))
+                .toList();
+        return new QueriesReport(queryStats.getRequestQueryThreshold(), queries, suspects);
+    }
+
+    @ReadOperation
+    public QueryHistogramReport query(@Selector String name) {
+        return queryStats.getQuery(name)
+                .map(query -> new QueryHistogramReport(QueryReport.of(query), histogram(query)))
+                .orElse(null);
+    }
+
+    @DeleteOperation
+    public void reset() {
+        queryStats.reset();
+    }
+
+    // ключ - верхняя граница корзины в мкс, пустые корзины пропускаются
+    private static Map<String, Long> histogram(QueryStats.Query query) {
+        long[] counts = query.getHistogram();
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                long bound = QueryStats.Query.getBucketBoundMicros(i);
+                histogram.put(bound == Long.MAX_VALUE ? "inf" : "<" + bound + "us", counts[i]);
+            }
+        }
+        return histogram;
+    }
+
+    public record QueriesReport(int requestQueryThreshold, List<QueryReport> queries,
+                                List<SuspectReport> suspectedNPlusOne) {
+    }
+
+    public record QueryReport(String name, long calls, long errors, long rows, double totalMs, double meanUs,
+                              double maxUs, long p50Us, long p99Us) {
+
+        static QueryReport of(QueryStats.Query query) {
+            long calls = query.getCalls();
+            return new QueryReport(query.getName(), calls, query.getErrors(), query.getRows(),
+                    query.getTotalNanos() / 1e6,
+                    calls == 0 ? 0 : query.getTotalNanos() / 1e3 / calls,
+                    query.getMaxNanos() / 1e3,
+                    query.getPercentileMicros(0.5),
+                    query.getPercentileMicros(0.99));
+        }
+    }
+
+    public record QueryHistogramReport(QueryReport query, Map<String, Long> histogram) {
+    }
+
+    public record SuspectReport(String endpoint, long requests, long maxQueries, String topQuery) {
+    }
+}
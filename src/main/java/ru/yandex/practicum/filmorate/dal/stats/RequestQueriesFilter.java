@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.dal.stats;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Считает запросы к базе за HTTP-запрос для поиска N+1. Считаются запросы из потока обработки;
+ * запросы из фоновых потоков (параллельная сборка фильмов, асинхронная выгрузка) не попадают в подсчёт.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "filmorate.query-stats.enabled", havingValue = "true", matchIfMissing = true)
+public class RequestQueriesFilter extends OncePerRequestFilter {
+
+    private static final String UNMAPPED = "UNMAPPED";
+
+    private final QueryStats queryStats;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        queryStats.startRequest();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            // шаблон пути известен после выбора обработчика: /films/{filmId}, а не /films/42.
+            // Запросы без обработчика сводятся в один ключ: сырые URI раздули бы статистику без предела
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            queryStats.finishRequest(pattern != null ? request.getMethod() + " " + pattern : UNMAPPED);
+        }
+    }
+}
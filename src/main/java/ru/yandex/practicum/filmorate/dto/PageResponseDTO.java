@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class PageResponseDTO<T> {
+
+    private List<T> items;
+
+    // id последнего элемента страницы для параметра after; null, если страница последняя
+    private Long nextCursor;
+}
@@ -1,9 +1,11 @@
 package ru.yandex.practicum.filmorate.dto.film;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Builder;
 import lombok.Data;
 import ru.yandex.practicum.filmorate.dto.film.genre.GenreResponseInFilmDTO;
 import ru.yandex.practicum.filmorate.dto.film.mpa.MpaRateResponseInFilmDTO;
+import ru.yandex.practicum.filmorate.model.LikeSet;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -22,7 +24,11 @@ public class FilmResponseDTO {
 
     private int duration;
 
-    private List<Long> usersLikes;
+    // не заполняется, если запрошено только количество лайков
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private LikeSet usersLikes;
+
+    private long likesCount;
 
     private MpaRateResponseInFilmDTO mpa;
 
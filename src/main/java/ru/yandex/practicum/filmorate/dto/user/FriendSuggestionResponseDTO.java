@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.dto.user;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class FriendSuggestionResponseDTO {
+
+    private UserResponseDTO user;
+
+    private int mutualFriends;
+}
@@ -99,6 +99,7 @@ public class FilmMapper {
                 .releaseDate(film.getReleaseDate())
                 .duration(film.getDuration())
                 .usersLikes(film.getUsersLikes())
+                .likesCount(film.getLikesCount())
                 .build();
 
         if (film.getMpaRate() != null) {
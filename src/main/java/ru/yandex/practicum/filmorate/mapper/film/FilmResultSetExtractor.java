@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate.mapper.film;
+
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRate;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Собирает фильмы с рейтингом MPA и жанрами из выборки, где жанры фильма агрегированы
+ * в колонки-массивы {@code genre_ids} и {@code genre_names}. Лайки сюда не входят,
+ * их добавляет хранилище. Строки читаются потоково, одна строка - один фильм.
+ */
+@Component
+public class FilmResultSetExtractor implements ResultSetExtractor<List<Film>> {
+
+    @Override
+    public List<Film> extractData(ResultSet rs) throws SQLException {
+        List<Film> films = new ArrayList<>();
+
+        while (rs.next()) {
+            films.add(Film.builder()
+                    .id(rs.getLong("film_id"))
+                    .name(rs.getString("name"))
+                    .description(rs.getString("description"))
+                    .releaseDate(rs.getDate("release_date").toLocalDate())
+                    .duration(rs.getInt("duration"))
+                    .mpaRate(MpaRate.builder()
+                            .id(rs.getInt("mpa_rate"))
+                            .name(rs.getString("mpa_name"))
+                            .build())
+                    .genres(toGenres(rs.getArray("genre_ids"), rs.getArray("genre_names")))
+                    .build());
+        }
+
+        return films;
+    }
+
+    private List<Genre> toGenres(Array ids, Array names) throws SQLException {
+        if (ids == null) {
+            return new ArrayList<>();
+        }
+
+        Object[] genreIds = (Object[]) ids.getArray();
+        Object[] genreNames = (Object[]) names.getArray();
+        List<Genre> genres = new ArrayList<>(genreIds.length);
+        for (int i = 0; i < genreIds.length; i++) {
+            genres.add(new Genre(((Number) genreIds[i]).intValue(), (String) genreNames[i]));
+        }
+        return genres;
+    }
+}
@@ -1,9 +1,11 @@
 package ru.yandex.practicum.filmorate.mapper.user;
 
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dto.user.FriendSuggestionResponseDTO;
 import ru.yandex.practicum.filmorate.dto.user.NewUserRequestDTO;
 import ru.yandex.practicum.filmorate.dto.user.UpdateUserRequestDTO;
 import ru.yandex.practicum.filmorate.dto.user.UserResponseDTO;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.ArrayList;
@@ -37,6 +39,16 @@ public class UserMapper {
 
     }
 
+    public Collection<FriendSuggestionResponseDTO> toFriendSuggestionResponseDTO(
+            Collection<FriendSuggestion> suggestions) {
+        return suggestions.stream()
+                .map(suggestion -> FriendSuggestionResponseDTO.builder()
+                        .user(toUserResponseDTO(suggestion.getUser()))
+                        .mutualFriends(suggestion.getMutualFriends())
+                        .build())
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
     public User toUser(NewUserRequestDTO newUserRequestDTO) {
         return User.builder()
                 .email(newUserRequestDTO.getEmail())
@@ -6,6 +6,7 @@ import jakarta.validation.constraints.Positive;
 import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import org.hibernate.validator.constraints.Length;
 import ru.yandex.practicum.filmorate.Configuration;
 
@@ -13,7 +14,7 @@ import java.time.LocalDate;
 import java.util.List;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @EqualsAndHashCode(of = "id")
 public class Film {
 
@@ -31,7 +32,11 @@ public class Film {
     @Positive
     private int duration;
 
-    private List<Long> usersLikes;
+    // у популярного фильма сотни тысяч лайков, в логах они не нужны
+    @ToString.Exclude
+    private LikeSet usersLikes;
+
+    private long likesCount;
 
     private MpaRate mpaRate;
 
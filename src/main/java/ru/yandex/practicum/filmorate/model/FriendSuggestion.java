@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Кандидат в друзья: друг друзей пользователя и количество их общих друзей.
+ */
+@Data
+@Builder
+public class FriendSuggestion {
+
+    private User user;
+
+    private int mutualFriends;
+}
@@ -0,0 +1,133 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Неизменяемое множество id пользователей, лайкнувших фильм: отсортированный массив long,
+ * 8 байт на лайк вместо Long и узла коллекции. Проверка лайка - бинарный поиск.
+ * В JSON пишется массивом чисел напрямую из массива, без упаковки в Long.
+ */
+@JsonSerialize(using = LikeSet.Serializer.class)
+public final class LikeSet extends AbstractSet<Long> {
+
+    public static final LikeSet EMPTY = new LikeSet(new long[0], 0);
+
+    private final long[] userIds;
+    private final int size;
+
+    private LikeSet(long[] userIds, int size) {
+        this.userIds = userIds;
+        this.size = size;
+    }
+
+    public static LikeSet of(long... userIds) {
+        long[] sorted = userIds.clone();
+        Arrays.sort(sorted);
+        return new LikeSet(sorted, deduplicate(sorted, sorted.length));
+    }
+
+    /**
+     * @param userIds отсортированные по возрастанию id без повторов; массив не копируется
+     */
+    public static LikeSet ofSorted(long[] userIds) {
+        return userIds.length == 0 ? EMPTY : new LikeSet(userIds, userIds.length);
+    }
+
+    public boolean contains(long userId) {
+        return Arrays.binarySearch(userIds, 0, size, userId) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long userId && contains(userId.longValue());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<>() {
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                return position < size;
+            }
+
+            @Override
+            public Long next() {
+                if (position >= size) {
+                    throw new NoSuchElementException();
+                }
+                return userIds[position++];
+            }
+        };
+    }
+
+    /**
+     * @return копия id по возрастанию
+     */
+    public long[] toLongArray() {
+        return Arrays.copyOf(userIds, size);
+    }
+
+    private static int deduplicate(long[] sorted, int length) {
+        int unique = 0;
+        for (int i = 0; i < length; i++) {
+            if (unique == 0 || sorted[unique - 1] != sorted[i]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Собирает множество из id в любом порядке, например построчно из выборки.
+     * После {@link #build()} построитель не переиспользуется: множество забирает его массив.
+     */
+    public static class Builder {
+
+        private long[] userIds = new long[16];
+        private int size;
+
+        public Builder add(long userId) {
+            if (size == userIds.length) {
+                userIds = Arrays.copyOf(userIds, size * 2);
+            }
+            userIds[size++] = userId;
+            return this;
+        }
+
+        public LikeSet build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            Arrays.sort(userIds, 0, size);
+            return new LikeSet(userIds, deduplicate(userIds, size));
+        }
+    }
+
+    public static class Serializer extends StdSerializer<LikeSet> {
+
+        public Serializer() {
+            super(LikeSet.class);
+        }
+
+        @Override
+        public void serialize(LikeSet likes, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeArray(likes.userIds, 0, likes.size);
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package ru.yandex.practicum.filmorate.service;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.Configuration;
+import ru.yandex.practicum.filmorate.dto.PageResponseDTO;
 import ru.yandex.practicum.filmorate.dto.film.FilmResponseDTO;
 import ru.yandex.practicum.filmorate.dto.film.NewFilmRequestDTO;
 import ru.yandex.practicum.filmorate.dto.film.UpdateFilmRequestDTO;
@@ -12,11 +15,12 @@ import ru.yandex.practicum.filmorate.exception.StorageException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.mapper.film.FilmMapper;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmRecommender;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 
 import java.time.LocalDate;
-import java.util.Collection;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -26,21 +30,28 @@ public class FilmService {
     private final FilmStorage filmStorage;
     private final UserService userService;
     private final FilmMapper filmMapper;
+    private final Validator validator;
+    private final FilmRecommender filmRecommender;
 
     public FilmService(Configuration config,
                        @Qualifier("filmDbStorage") FilmStorage filmStorage,
                        UserService userService,
-                       FilmMapper filmMapper) {
+                       FilmMapper filmMapper,
+                       Validator validator,
+                       FilmRecommender filmRecommender) {
         this.config = config;
         this.filmStorage = filmStorage;
         this.userService = userService;
         this.filmMapper = filmMapper;
+        this.validator = validator;
+        this.filmRecommender = filmRecommender;
         log.debug("FilmService initialized with Configuration: {}, FilmStorage: {}, UserService: {}, FilmMapper: {}",
                 config.getClass(), filmStorage.getClass(), userService.getClass(), filmMapper.getClass());
     }
 
     public FilmResponseDTO createFilm(NewFilmRequestDTO newFilmDTO) {
-        log.info("Creating new film from DTO: {}", newFilmDTO);
+        log.info("Creating new film: {}", newFilmDTO.getName());
+        log.debug("New film DTO: {}", newFilmDTO);
         Film newFilm = filmMapper.toFilm(newFilmDTO);
 
         validateFilmReleaseDate(newFilm);
@@ -57,10 +68,57 @@ public class FilmService {
         return filmMapper.toFilmResponseDTO(newFilm);
     }
 
+    /**
+     * Создаёт фильмы одной транзакцией. Пакет проверяется целиком до записи:
+     * при первой ошибке не создаётся ни один фильм.
+     *
+     * @return id созданных фильмов в порядке пакета
+     */
+    public List<Long> createFilms(Iterator<NewFilmRequestDTO> newFilmDTOs) {
+        List<Film> newFilms = new ArrayList<>();
+
+        while (newFilmDTOs.hasNext()) {
+            if (newFilms.size() == config.getMaxBatchSize()) {
+                String message = "Batch must contain at most " + config.getMaxBatchSize() + " films";
+                log.warn("Validation failed for film batch: {}", message);
+                throw new ValidationException(message);
+            }
+            newFilms.add(toValidatedFilm(newFilmDTOs.next(), newFilms.size()));
+        }
+
+        if (newFilms.isEmpty()) {
+            String message = "Batch must contain at least one film";
+            log.warn("Validation failed for film batch: {}", message);
+            throw new ValidationException(message);
+        }
+
+        log.info("Creating batch of {} films", newFilms.size());
+        List<Long> newFilmIds = filmStorage.createFilms(newFilms);
+        log.info("Successfully created batch of {} films", newFilmIds.size());
+
+        return newFilmIds;
+    }
+
+    private Film toValidatedFilm(NewFilmRequestDTO newFilmDTO, int index) {
+        Set<ConstraintViolation<NewFilmRequestDTO>> violations = validator.validate(newFilmDTO);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<NewFilmRequestDTO> violation = violations.iterator().next();
+            String message = "Film #" + index + ": " + violation.getPropertyPath() + " " + violation.getMessage();
+            log.warn("Validation failed for film batch: {}", message);
+            throw new ValidationException(message);
+        }
+
+        Film newFilm = filmMapper.toFilm(newFilmDTO);
+        validateFilmReleaseDate(newFilm);
+        return newFilm;
+    }
+
     public Collection<FilmResponseDTO> getFilms() {
         log.info("Getting all films");
-        int filmsCount = filmStorage.getFilmsCount();
-        log.debug("Total films in storage: {}", filmsCount);
+        if (log.isDebugEnabled()) {
+            // отдельный запрос к базе, нужен только для отладки
+            log.debug("Total films in storage: {}", filmStorage.getFilmsCount());
+        }
 
         Collection<Film> films = filmStorage.getFilms();
         log.debug("Retrieved {} films", films.size());
@@ -68,9 +126,42 @@ public class FilmService {
         return filmMapper.toFilmResponseDTO(films);
     }
 
-    public FilmResponseDTO getFilmById(long filmId) {
-        log.info("Getting film by ID: {}", filmId);
-        Optional<Film> optionalFilm = filmStorage.getFilmById(filmId);
+    public PageResponseDTO<FilmResponseDTO> getFilmsPage(long afterFilmId, int limit) {
+        log.info("Getting films page after id {} with limit {}", afterFilmId, limit);
+        PageValidator.validatePage(afterFilmId, limit, config.getMaxPageSize());
+
+        // запрашиваем на один фильм больше, чтобы без лишнего запроса понять, есть ли следующая страница
+        List<Film> films = new ArrayList<>(filmStorage.getFilmsPage(afterFilmId, limit + 1));
+        Long nextCursor = null;
+        if (films.size() > limit) {
+            films = films.subList(0, limit);
+            nextCursor = films.getLast().getId();
+        }
+        log.debug("Retrieved {} films, next cursor: {}", films.size(), nextCursor);
+
+        return PageResponseDTO.<FilmResponseDTO>builder()
+                .items(new ArrayList<>(filmMapper.toFilmResponseDTO(films)))
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    public void exportFilms(Consumer<Collection<FilmResponseDTO>> chunkConsumer) {
+        log.info("Exporting all films in chunks of {}", config.getExportChunkSize());
+        long[] exported = {0};
+
+        filmStorage.forEachFilmChunk(config.getExportChunkSize(), films -> {
+            chunkConsumer.accept(filmMapper.toFilmResponseDTO(films));
+            exported[0] += films.size();
+        });
+        log.info("Exported {} films", exported[0]);
+    }
+
+    /**
+     * @param likes "ids" - список id лайкнувших пользователей, "count" - только число лайков
+     */
+    public FilmResponseDTO getFilmById(long filmId, String likes) {
+        log.info("Getting film by ID: {}, likes: {}", filmId, likes);
+        Optional<Film> optionalFilm = filmStorage.getFilmById(filmId, isLikeIdsRequested(likes));
 
         if (optionalFilm.isEmpty()) {
             String errorMessage = "Film with id=" + filmId + " not found";
@@ -83,18 +174,19 @@ public class FilmService {
         return filmMapper.toFilmResponseDTO(film);
     }
 
-    public Collection<FilmResponseDTO> getTopFilms(Integer count) {
+    public Collection<FilmResponseDTO> getTopFilms(Integer count, String likes) {
         int topCount = count != null ? count : config.getDefaultTopFilmCount();
-        log.info("Getting top {} films", topCount);
+        log.info("Getting top {} films, likes: {}", topCount, likes);
 
-        Collection<Film> topFilms = filmStorage.getTopFilms(topCount);
+        Collection<Film> topFilms = filmStorage.getTopFilms(topCount, isLikeIdsRequested(likes));
         log.debug("Retrieved {} top films", topFilms.size());
 
         return filmMapper.toFilmResponseDTO(topFilms);
     }
 
     public FilmResponseDTO updateFilm(UpdateFilmRequestDTO filmToUpdateDTO) {
-        log.info("Updating film with DTO: {}", filmToUpdateDTO);
+        log.info("Updating film with ID: {}", filmToUpdateDTO.getId());
+        log.debug("Film to update DTO: {}", filmToUpdateDTO);
         Film filmToUpdate = filmMapper.toFilm(filmToUpdateDTO);
 
         validateFilmToUpdate(filmToUpdate);
@@ -124,7 +216,7 @@ public class FilmService {
     public void addUserLike(long filmId, long userId) {
         log.info("Adding like from user {} to film {}", userId, filmId);
         checkFilmExist(filmId);
-        userService.checkAndGetUserById(userId);
+        userService.checkUserExist(userId);
 
         int wasAdded = filmStorage.addUserLike(filmId, userId);
         if (wasAdded == 0) {
@@ -132,6 +224,7 @@ public class FilmService {
             log.error(errorMessage);
             throw new StorageException(errorMessage);
         }
+        filmRecommender.addLike(filmId, userId);
         log.info("Successfully added like from user {} to film {}", userId, filmId);
     }
 
@@ -146,19 +239,50 @@ public class FilmService {
             log.error(errorMessage);
             throw new StorageException(errorMessage);
         }
+        filmRecommender.removeLike(filmId, userId);
         log.info("Successfully removed like from user {} to film {}", userId, filmId);
     }
 
+    public Collection<FilmResponseDTO> getRecommendations(long userId, Integer count) {
+        int recommendationsCount = count != null ? count : config.getDefaultRecommendationsCount();
+        log.info("Getting {} film recommendations for user {}", recommendationsCount, userId);
+
+        if (recommendationsCount < 1 || recommendationsCount > config.getMaxPageSize()) {
+            String message = "Recommendations count must be between 1 and " + config.getMaxPageSize();
+            log.warn("Validation failed for recommendations count={}: {}", recommendationsCount, message);
+            throw new ValidationException(message);
+        }
+        userService.checkAndGetUserById(userId);
+
+        List<Long> filmIds = filmRecommender.getRecommendedFilmIds(userId, recommendationsCount,
+                config.getRecommendationsWorkLimit());
+        Collection<Film> films = filmStorage.getFilmsByIds(filmIds);
+        log.debug("Found {} film recommendations for user {}", films.size(), userId);
+
+        return filmMapper.toFilmResponseDTO(films);
+    }
+
     private void validateFilmToUpdate(Film film) {
         log.debug("Validating film for update: {}", film);
         validateFilmReleaseDate(film);
         checkFilmExist(film.getId());
     }
 
+    private boolean isLikeIdsRequested(String likes) {
+        if (likes == null || likes.equals("ids")) {
+            return true;
+        }
+        if (likes.equals("count")) {
+            return false;
+        }
+        String message = "Parameter likes must be 'ids' or 'count'";
+        log.warn("Validation failed for likes={}: {}", likes, message);
+        throw new ValidationException(message);
+    }
+
     private void checkFilmExist(long filmId) {
         log.debug("Checking existence of film with ID: {}", filmId);
-        Optional<Film> optionalFilm = filmStorage.getFilmById(filmId);
-        if (optionalFilm.isEmpty()) {
+        if (!filmStorage.isFilmExist(filmId)) {
             String message = "Film with id=" + filmId + " not found";
             log.error(message);
             throw new NotFoundException(message);
@@ -167,16 +291,10 @@ public class FilmService {
 
     private void checkFilmUserLikeExist(long filmId, long userLikeId) {
         log.debug("Checking like from user {} for film {}", userLikeId, filmId);
-        Optional<Film> optionalFilm = filmStorage.getFilmById(filmId);
-
-        if (optionalFilm.isPresent()) {
-            if (optionalFilm.get().getUsersLikes() != null) {
-                if (!optionalFilm.get().getUsersLikes().contains(userLikeId)) {
-                    String message = "Like with User id=" + userLikeId + " not found";
-                    log.error(message);
-                    throw new NotFoundException(message);
-                }
-            }
+        if (!filmStorage.isFilmUserLikeExist(filmId, userLikeId)) {
+            String message = "Like with User id=" + userLikeId + " not found";
+            log.error(message);
+            throw new NotFoundException(message);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+/**
+ * Проверка параметров постраничной выдачи по курсору, общая для фильмов и пользователей.
+ */
+@Slf4j
+final class PageValidator {
+
+    private PageValidator() {
+    }
+
+    /**
+     * @param after       id последнего элемента предыдущей страницы, 0 - с начала
+     * @param limit       размер страницы
+     * @param maxPageSize наибольший допустимый размер страницы ({@code filmorate.max-page-size})
+     */
+    static void validatePage(long after, int limit, int maxPageSize) {
+        if (after < 0) {
+            String message = "Page cursor must not be negative";
+            log.warn("Validation failed for page after={}: {}", after, message);
+            throw new ValidationException(message);
+        }
+        if (limit < 1 || limit > maxPageSize) {
+            String message = "Page limit must be between 1 and " + maxPageSize;
+            log.warn("Validation failed for page limit={}: {}", limit, message);
+            throw new ValidationException(message);
+        }
+    }
+}
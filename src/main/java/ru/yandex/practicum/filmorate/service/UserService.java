@@ -3,6 +3,9 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.Configuration;
+import ru.yandex.practicum.filmorate.dto.PageResponseDTO;
+import ru.yandex.practicum.filmorate.dto.user.FriendSuggestionResponseDTO;
 import ru.yandex.practicum.filmorate.dto.user.NewUserRequestDTO;
 import ru.yandex.practicum.filmorate.dto.user.UpdateUserRequestDTO;
 import ru.yandex.practicum.filmorate.dto.user.UserResponseDTO;
@@ -10,22 +13,26 @@ import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.StorageException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.mapper.user.UserMapper;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class UserService {
 
+    private final Configuration config;
     private final UserStorage userStorage;
     private final UserMapper userMapper;
 
-    public UserService(@Qualifier("userDbStorage") UserStorage userStorage, UserMapper userMapper) {
+    public UserService(Configuration config, @Qualifier("userDbStorage") UserStorage userStorage, UserMapper userMapper) {
+        this.config = config;
         this.userStorage = userStorage;
         this.userMapper = userMapper;
         log.debug("UserService initialized with UserStorage: {} and UserMapper: {}",
@@ -33,7 +40,8 @@ public class UserService {
     }
 
     public UserResponseDTO createUser(NewUserRequestDTO newUserRequestDTO) {
-        log.info("Creating new user from DTO: {}", newUserRequestDTO);
+        log.info("Creating new user: {}", newUserRequestDTO.getLogin());
+        log.debug("New user DTO: {}", newUserRequestDTO);
         User newUser = userMapper.toUser(newUserRequestDTO);
 
         setUserNameIfEmpty(newUser);
@@ -58,6 +66,25 @@ public class UserService {
         return userMapper.toUserResponseDTO(users);
     }
 
+    public PageResponseDTO<UserResponseDTO> getUsersPage(long afterUserId, int limit) {
+        log.info("Getting users page after id {} with limit {}", afterUserId, limit);
+        PageValidator.validatePage(afterUserId, limit, config.getMaxPageSize());
+
+        // запрашиваем на одного пользователя больше, чтобы понять, есть ли следующая страница
+        List<User> users = new ArrayList<>(userStorage.getUsersPage(afterUserId, limit + 1));
+        Long nextCursor = null;
+        if (users.size() > limit) {
+            users = users.subList(0, limit);
+            nextCursor = users.getLast().getId();
+        }
+        log.debug("Retrieved {} users, next cursor: {}", users.size(), nextCursor);
+
+        return PageResponseDTO.<UserResponseDTO>builder()
+                .items(new ArrayList<>(userMapper.toUserResponseDTO(users)))
+                .nextCursor(nextCursor)
+                .build();
+    }
+
     public UserResponseDTO getUserById(long id) {
         log.info("Getting user by ID: {}", id);
         User user = checkAndGetUserById(id);
@@ -66,7 +93,8 @@ public class UserService {
     }
 
     public UserResponseDTO updateUser(UpdateUserRequestDTO userToUpdateDTO) {
-        log.info("Updating user with DTO: {}", userToUpdateDTO);
+        log.info("Updating user with ID: {}", userToUpdateDTO.getId());
+        log.debug("User to update DTO: {}", userToUpdateDTO);
         User userToUpdate = userMapper.toUser(userToUpdateDTO);
 
         validateUserToUpdate(userToUpdate);
@@ -173,6 +201,16 @@ public class UserService {
         return mayBeUser.get();
     }
 
+    // проверка без загрузки пользователя и его друзей
+    protected void checkUserExist(long id) {
+        log.debug("Checking existence of user with ID: {}", id);
+        if (!userStorage.isUserExist(id)) {
+            String message = "User with id=" + id + " not found";
+            log.error(message);
+            throw new NotFoundException(message);
+        }
+    }
+
     protected boolean isUserHaveFriend(Set<User> userFriends, long friendId) {
         log.debug("Checking if user has friend {}", friendId);
         return userFriends.stream()
@@ -199,16 +237,29 @@ public class UserService {
         checkAndGetUserById(userId);
         checkAndGetUserById(otherUserId);
 
-        Set<User> userFriends = userStorage.getUserFriends(userId);
-        Set<User> otherUserIdFriends = userStorage.getUserFriends(otherUserId);
-
-        Collection<User> commonFriends = userFriends.stream()
-                .filter(otherUserIdFriends::contains)
-                .collect(Collectors.toSet());
+        Collection<User> commonFriends = userStorage.getCommonFriends(userId, otherUserId);
 
         log.debug("Found {} common friends between user {} and user {}",
                 commonFriends.size(), userId, otherUserId);
 
         return userMapper.toUserResponseDTO(commonFriends);
     }
+
+    public Collection<FriendSuggestionResponseDTO> getFriendSuggestions(long userId, Integer count) {
+        int suggestionsCount = count != null ? count : config.getDefaultFriendSuggestionsCount();
+        log.info("Getting {} friend suggestions for user {}", suggestionsCount, userId);
+
+        if (suggestionsCount < 1 || suggestionsCount > config.getMaxPageSize()) {
+            String message = "Suggestions count must be between 1 and " + config.getMaxPageSize();
+            log.warn("Validation failed for suggestions count={}: {}", suggestionsCount, message);
+            throw new ValidationException(message);
+        }
+        checkAndGetUserById(userId);
+
+        List<FriendSuggestion> suggestions = userStorage.getFriendSuggestions(userId, suggestionsCount,
+                config.getFriendSuggestionsWorkLimit());
+        log.debug("Found {} friend suggestions for user {}", suggestions.size(), userId);
+
+        return userMapper.toFriendSuggestionResponseDTO(suggestions);
+    }
 }
\ No newline at end of file
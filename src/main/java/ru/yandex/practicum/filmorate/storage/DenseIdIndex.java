@@ -0,0 +1,114 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Плотная нумерация id: каждому новому id выдаётся следующий индекс int, начиная с нуля.
+ * Индекс не меняется и не освобождается. Массивы и битовые карты по индексам не зависят от величины
+ * и разреженности id, в том числе от id больше {@link Integer#MAX_VALUE}.
+ * <p>
+ * Поиск индекса идёт под разделяемой блокировкой, выдача нового - под исключительной.
+ * Обратное преобразование {@link #idAt} обходится без блокировки: индекс, полученный от владельца
+ * структуры, уже опубликован вместе со своим id.
+ */
+public class DenseIdIndex {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int NOT_FOUND = -1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // открытая адресация: в slots индекс id + 1, ноль - пустая ячейка
+    private long[] keys = new long[MIN_CAPACITY];
+    private int[] slots = new int[MIN_CAPACITY];
+    private volatile long[] ids = new long[MIN_CAPACITY];
+    private int size;
+
+    /**
+     * @return индекс id или -1, если id ещё не встречался
+     */
+    public int indexOf(long id) {
+        lock.readLock().lock();
+        try {
+            return slots[slotOf(id)] - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getOrAdd(long id) {
+        int index = indexOf(id);
+        if (index != NOT_FOUND) {
+            return index;
+        }
+
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(id);
+            if (slots[slot] != 0) {
+                return slots[slot] - 1;
+            }
+
+            index = size;
+            long[] current = ids;
+            if (index == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[index] = id;
+            ids = current;
+            keys[slot] = id;
+            slots[slot] = index + 1;
+            size++;
+            if (size * 4 > keys.length * 3) {
+                resize(keys.length * 2);
+            }
+            return index;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long idAt(int index) {
+        return ids[index];
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ячейка с id или первая пустая ячейка на его цепочке
+    private int slotOf(long id) {
+        int mask = keys.length - 1;
+        int slot = hash(id) & mask;
+        while (slots[slot] != 0 && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new long[capacity];
+        slots = new int[capacity];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldSlots[i] != 0) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                slots[slot] = oldSlots[i];
+            }
+        }
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,263 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Сжатое множество int в духе Roaring: значения делятся на блоки по старшим 16 битам,
+ * каждый блок хранит младшие 16 бит либо отсортированным массивом char (до {@link #ARRAY_MAX_SIZE}
+ * значений, 2 байта на значение), либо битовой картой на 65536 бит (8 КБ на блок).
+ * Разреженные множества занимают почти как отсортированный массив, плотные - бит на значение.
+ * Класс не потокобезопасен, синхронизацию обеспечивает владелец множества.
+ */
+public class IntBitmap {
+
+    // при таком размере массив и битовая карта занимают одинаково
+    private static final int ARRAY_MAX_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int containersCount;
+    private int cardinality;
+
+    public boolean add(int value) {
+        char key = (char) (value >>> 16);
+        int index = indexOf(key);
+
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key);
+        }
+        if (!containers[index].add((char) value)) {
+            return false;
+        }
+        cardinality++;
+        return true;
+    }
+
+    public boolean remove(int value) {
+        int index = indexOf((char) (value >>> 16));
+        if (index < 0 || !containers[index].remove((char) value)) {
+            return false;
+        }
+        cardinality--;
+        if (containers[index].cardinality == 0) {
+            removeContainer(index);
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        int index = indexOf((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * Обходит значения по возрастанию, пока action возвращает true.
+     *
+     * @return false, если обход остановлен
+     */
+    public boolean forEachWhile(IntPredicate action) {
+        for (int i = 0; i < containersCount; i++) {
+            if (!containers[i].forEachWhile(keys[i] << 16, null, action)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Обходит по возрастанию значения, которых нет в excluded, пока action возвращает true.
+     * Блоки без пары в excluded обходятся целиком, без поиска по ним.
+     *
+     * @return false, если обход остановлен
+     */
+    public boolean forEachAndNotWhile(IntBitmap excluded, IntPredicate action) {
+        int j = 0;
+        for (int i = 0; i < containersCount; i++) {
+            while (j < excluded.containersCount && excluded.keys[j] < keys[i]) {
+                j++;
+            }
+            Container other = j < excluded.containersCount && excluded.keys[j] == keys[i]
+                    ? excluded.containers[j]
+                    : null;
+            if (!containers[i].forEachWhile(keys[i] << 16, other, action)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int[] toArray() {
+        int[] values = new int[cardinality];
+        int[] position = {0};
+        forEachWhile(value -> {
+            values[position[0]++] = value;
+            return true;
+        });
+        return values;
+    }
+
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, containersCount, key);
+    }
+
+    private void insertContainer(int index, char key) {
+        if (containersCount == keys.length) {
+            int capacity = Math.max(4, containersCount * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, containersCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containersCount - index);
+        keys[index] = key;
+        containers[index] = new Container();
+        containersCount++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, containersCount - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, containersCount - index - 1);
+        containers[--containersCount] = null;
+    }
+
+    /**
+     * Блок младших 16 бит: массив, пока значений не больше {@link #ARRAY_MAX_SIZE}, затем битовая карта.
+     * Обратно в массив блок переходит только при вдвое меньшем размере, чтобы не пересобираться
+     * при колебаниях около порога.
+     */
+    private static final class Container {
+
+        private char[] values = new char[4];
+        private long[] bits;
+        private int cardinality;
+
+        boolean add(char value) {
+            if (bits != null) {
+                long mask = 1L << value;
+                if ((bits[value >>> 6] & mask) != 0) {
+                    return false;
+                }
+                bits[value >>> 6] |= mask;
+                cardinality++;
+                return true;
+            }
+
+            int position = Arrays.binarySearch(values, 0, cardinality, value);
+            if (position >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_MAX_SIZE) {
+                toBitmap();
+                return add(value);
+            }
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(Math.max(4, values.length * 2), ARRAY_MAX_SIZE));
+            }
+            int insertAt = -position - 1;
+            System.arraycopy(values, insertAt, values, insertAt + 1, cardinality - insertAt);
+            values[insertAt] = value;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char value) {
+            if (bits != null) {
+                long mask = 1L << value;
+                if ((bits[value >>> 6] & mask) == 0) {
+                    return false;
+                }
+                bits[value >>> 6] &= ~mask;
+                cardinality--;
+                if (cardinality <= ARRAY_MAX_SIZE / 2) {
+                    toArray();
+                }
+                return true;
+            }
+
+            int position = Arrays.binarySearch(values, 0, cardinality, value);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+            cardinality--;
+            return true;
+        }
+
+        boolean contains(char value) {
+            if (bits != null) {
+                return (bits[value >>> 6] & (1L << value)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        boolean forEachWhile(int high, Container excluded, IntPredicate action) {
+            if (bits == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    if ((excluded == null || !excluded.contains(values[i])) && !action.test(high | values[i])) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bitsLeft = bits[word];
+                if (excluded != null) {
+                    bitsLeft &= ~excluded.word(word);
+                }
+                while (bitsLeft != 0) {
+                    int value = high | (word << 6) | Long.numberOfTrailingZeros(bitsLeft);
+                    if (!action.test(value)) {
+                        return false;
+                    }
+                    bitsLeft &= bitsLeft - 1;
+                }
+            }
+            return true;
+        }
+
+        // слово битовой карты для любой формы блока
+        private long word(int word) {
+            if (bits != null) {
+                return bits[word];
+            }
+            long result = 0;
+            int from = Arrays.binarySearch(values, 0, cardinality, (char) (word << 6));
+            for (int i = from >= 0 ? from : -from - 1; i < cardinality && values[i] >>> 6 == word; i++) {
+                result |= 1L << values[i];
+            }
+            return result;
+        }
+
+        private void toBitmap() {
+            bits = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+
+        private void toArray() {
+            values = new char[cardinality];
+            int position = 0;
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bitsLeft = bits[word];
+                while (bitsLeft != 0) {
+                    values[position++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bitsLeft));
+                    bitsLeft &= bitsLeft - 1;
+                }
+            }
+            bits = null;
+        }
+    }
+}
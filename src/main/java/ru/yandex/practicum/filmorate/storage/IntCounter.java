@@ -0,0 +1,264 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Счётчики по примитивным ключам int на открытой адресации: без упаковки в Integer
+ * и без объекта на каждый ключ. Предназначен для одного запроса, не потокобезопасен.
+ */
+public class IntCounter {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    // ноль - пустая ячейка: в счётчик добавляются только положительные значения
+    private int[] counts;
+    private int shift;
+    private int size;
+
+    public IntCounter(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    public void increment(int key) {
+        add(key, 1);
+    }
+
+    /**
+     * @param delta положительное приращение
+     */
+    public void add(int key, int delta) {
+        int index = indexOf(key);
+        if (counts[index] == 0) {
+            keys[index] = key;
+            size++;
+        }
+        counts[index] += delta;
+
+        if (size * 4 > keys.length * 3) {
+            resize();
+        }
+    }
+
+    public int get(int key) {
+        return counts[indexOf(key)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param keyOrder порядок ключей при равных счётчиках, например id, которому выдан ключ -
+     *                 плотный индекс {@link DenseIdIndex}
+     * @return до count ключей по убыванию счётчика, при равенстве - по возрастанию keyOrder
+     */
+    public int[] topKeys(int count, IntToLongFunction keyOrder) {
+        int limit = Math.min(count, size);
+        if (limit == 0) {
+            return new int[0];
+        }
+
+        // один проход по таблице: куча счётчиков находит границу отбора - наименьший из count лучших
+        // счётчиков, а записи не хуже границы на момент просмотра копятся отдельно. Среди них все ключи
+        // с итоговым граничным счётчиком, поэтому порядок ключа нужен только для этих записей
+        int[] heap = new int[limit];
+        int heapSize = 0;
+        long[] candidates = new long[limit * 2];
+        int candidatesCount = 0;
+
+        for (int i = 0; i < keys.length; i++) {
+            int keyCount = counts[i];
+            if (keyCount == 0) {
+                continue;
+            }
+            if (heapSize < limit) {
+                heap[heapSize] = keyCount;
+                siftUp(heap, heapSize++);
+            } else if (keyCount > heap[0]) {
+                heap[0] = keyCount;
+                siftDown(heap, heapSize);
+            } else if (keyCount < heap[0]) {
+                continue;
+            }
+            if (candidatesCount == candidates.length) {
+                candidates = Arrays.copyOf(candidates, candidatesCount * 2);
+            }
+            // старшие 32 бита - счётчик, младшие - ключ
+            candidates[candidatesCount++] = ((long) keyCount << 32) | (0xFFFFFFFFL & keys[i]);
+        }
+
+        int boundary = heap[0];
+        Ranks top = new Ranks(limit);
+        for (int i = 0; i < candidatesCount; i++) {
+            int keyCount = (int) (candidates[i] >>> 32);
+            if (keyCount < boundary) {
+                continue;
+            }
+            int key = (int) candidates[i];
+            long order = keyOrder.applyAsLong(key);
+            if (top.size < limit) {
+                top.push(key, keyCount, order);
+            } else if (keyCount > top.counts[0] || keyCount == top.counts[0] && order < top.orders[0]) {
+                top.replaceRoot(key, keyCount, order);
+            }
+        }
+
+        int[] keysByRank = new int[top.size];
+        for (int i = keysByRank.length - 1; i >= 0; i--) {
+            keysByRank[i] = top.popRoot();
+        }
+        return keysByRank;
+    }
+
+    private static void siftUp(int[] heap, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] <= heap[index]) {
+                return;
+            }
+            swap(heap, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size) {
+        int index = 0;
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && heap[left] < heap[smallest]) {
+                smallest = left;
+            }
+            if (right < size && heap[right] < heap[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(heap, smallest, index);
+            index = smallest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int value = heap[i];
+        heap[i] = heap[j];
+        heap[j] = value;
+    }
+
+    private int indexOf(int key) {
+        int mask = keys.length - 1;
+        // мультипликативный хэш: берём старшие биты произведения
+        int index = (key * 0x9E3779B9) >>> shift;
+        while (counts[index] != 0 && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        allocate(keys.length * 2);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                counts[index] = oldCounts[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        counts = new int[capacity];
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    // куча с минимумом в корне по (счётчик, обратный порядок ключа) в параллельных массивах
+    private static final class Ranks {
+
+        private final int[] keys;
+        private final int[] counts;
+        private final long[] orders;
+        private int size;
+
+        Ranks(int capacity) {
+            keys = new int[capacity];
+            counts = new int[capacity];
+            orders = new long[capacity];
+        }
+
+        void push(int key, int count, long order) {
+            set(size, key, count, order);
+            int index = size++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!worse(index, parent)) {
+                    return;
+                }
+                swap(parent, index);
+                index = parent;
+            }
+        }
+
+        void replaceRoot(int key, int count, long order) {
+            set(0, key, count, order);
+            siftDown();
+        }
+
+        int popRoot() {
+            int key = keys[0];
+            size--;
+            set(0, keys[size], counts[size], orders[size]);
+            siftDown();
+            return key;
+        }
+
+        private void siftDown() {
+            int index = 0;
+            while (true) {
+                int worst = index;
+                int left = 2 * index + 1;
+                int right = left + 1;
+                if (left < size && worse(left, worst)) {
+                    worst = left;
+                }
+                if (right < size && worse(right, worst)) {
+                    worst = right;
+                }
+                if (worst == index) {
+                    return;
+                }
+                swap(worst, index);
+                index = worst;
+            }
+        }
+
+        private boolean worse(int i, int j) {
+            return counts[i] < counts[j] || counts[i] == counts[j] && orders[i] > orders[j];
+        }
+
+        private void set(int index, int key, int count, long order) {
+            keys[index] = key;
+            counts[index] = count;
+            orders[index] = order;
+        }
+
+        private void swap(int i, int j) {
+            int key = keys[i];
+            int count = counts[i];
+            long order = orders[i];
+            set(i, keys[j], counts[j], orders[j]);
+            set(j, key, count, order);
+        }
+    }
+}
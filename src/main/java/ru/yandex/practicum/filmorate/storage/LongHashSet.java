@@ -0,0 +1,161 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Множество примитивных long на открытой адресации с линейным пробированием: без упаковки
+ * в Long и без объекта на каждый элемент. Добавление, удаление и проверка - O(1) в среднем.
+ * Класс не потокобезопасен, синхронизацию обеспечивает владелец множества.
+ */
+public class LongHashSet {
+
+    private static final int MIN_CAPACITY = 4;
+    // пустая ячейка; сам ноль хранится отдельным флагом
+    private static final long EMPTY = 0;
+
+    private long[] table;
+    private int size;
+    private boolean containsZero;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongHashSet(int expectedSize) {
+        table = new long[tableSizeFor(expectedSize)];
+    }
+
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        int index = indexOf(value);
+        if (table[index] == value) {
+            return false;
+        }
+        table[index] = value;
+        size++;
+        if (size * 4 > table.length * 3) {
+            resize(table.length * 2);
+        }
+        return true;
+    }
+
+    public boolean remove(long value) {
+        if (value == EMPTY) {
+            if (!containsZero) {
+                return false;
+            }
+            containsZero = false;
+            size--;
+            return true;
+        }
+
+        int index = indexOf(value);
+        if (table[index] != value) {
+            return false;
+        }
+        table[index] = EMPTY;
+        size--;
+        shiftBack(index);
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsZero;
+        }
+        return table[indexOf(value)] == value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(LongConsumer action) {
+        if (containsZero) {
+            action.accept(EMPTY);
+        }
+        for (long value : table) {
+            if (value != EMPTY) {
+                action.accept(value);
+            }
+        }
+    }
+
+    public long[] toArray() {
+        long[] values = new long[size];
+        int[] position = {0};
+        forEach(value -> values[position[0]++] = value);
+        return values;
+    }
+
+    /**
+     * @return элементы по возрастанию
+     */
+    public long[] toSortedArray() {
+        long[] values = toArray();
+        Arrays.sort(values);
+        return values;
+    }
+
+    // ячейка со значением или первая пустая ячейка на его цепочке
+    private int indexOf(long value) {
+        int mask = table.length - 1;
+        int index = hash(value) & mask;
+        while (table[index] != EMPTY && table[index] != value) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    // после удаления сдвигает хвост цепочки, чтобы поиск не обрывался на освободившейся ячейке
+    private void shiftBack(int freed) {
+        int mask = table.length - 1;
+        int index = (freed + 1) & mask;
+
+        while (table[index] != EMPTY) {
+            int home = hash(table[index]) & mask;
+            if (((index - home) & mask) >= ((index - freed) & mask)) {
+                table[freed] = table[index];
+                table[index] = EMPTY;
+                freed = index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] old = table;
+        table = new long[capacity];
+        for (long value : old) {
+            if (value != EMPTY) {
+                table[indexOf(value)] = value;
+            }
+        }
+    }
+
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 < expectedSize * 4) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+
+/**
+ * Операции над отсортированными по возрастанию массивами long без повторов.
+ */
+public final class SortedLongArrays {
+
+    // при таком соотношении размеров бинарный поиск по большему массиву дешевле слияния
+    private static final int BINARY_SEARCH_RATIO = 16;
+
+    private SortedLongArrays() {
+    }
+
+    /**
+     * Пересечение двух массивов: слиянием за O(n + m) или, если один массив много меньше другого,
+     * бинарным поиском его элементов за O(n log m).
+     *
+     * @return общие элементы по возрастанию
+     */
+    public static long[] intersect(long[] first, long[] second) {
+        long[] smaller = first.length <= second.length ? first : second;
+        long[] larger = smaller == first ? second : first;
+        long[] result = new long[smaller.length];
+        int size = 0;
+
+        if ((long) smaller.length * BINARY_SEARCH_RATIO < larger.length) {
+            int from = 0;
+            for (long value : smaller) {
+                int index = Arrays.binarySearch(larger, from, larger.length, value);
+                if (index >= 0) {
+                    result[size++] = value;
+                    from = index + 1;
+                } else {
+                    from = -index - 1;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < smaller.length && j < larger.length) {
+                if (smaller[i] < larger[j]) {
+                    i++;
+                } else if (smaller[i] > larger[j]) {
+                    j++;
+                } else {
+                    result[size++] = smaller[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+}
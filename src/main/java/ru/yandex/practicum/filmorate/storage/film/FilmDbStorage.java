@@ -1,34 +1,140 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.dal.FilmRepository;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeSet;
 import ru.yandex.practicum.filmorate.model.MpaRate;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Component
 @Qualifier("filmDbStorage")
-@RequiredArgsConstructor
 public class FilmDbStorage implements FilmStorage {
 
     private final FilmRepository filmRepository;
+    private final ReferenceDataCache referenceDataCache;
+    private final LikeWriteBehind likeWriteBehind;
+    private final ParallelLookups parallelLookups;
+    private final FilmLeaderboard leaderboard = new FilmLeaderboard();
+    // фильмы, чьи счётчики лайков ещё не записаны в films.like_count
+    private final Set<Long> unsyncedFilmIds = ConcurrentHashMap.newKeySet();
+
+    public FilmDbStorage(FilmRepository filmRepository, ReferenceDataCache referenceDataCache,
+                         LikeWriteBehind likeWriteBehind, ParallelLookups parallelLookups) {
+        this.filmRepository = filmRepository;
+        this.referenceDataCache = referenceDataCache;
+        this.likeWriteBehind = likeWriteBehind;
+        this.parallelLookups = parallelLookups;
+        // при отложенной записи рейтинг меняется, когда лайк реально записан в базу
+        likeWriteBehind.setFlushListener((filmId, userId, delta) -> changeLikesCount(filmId, delta));
+    }
+
+    @PostConstruct
+    public void warmUpLeaderboard() {
+        Map<Long, Long> likesCounts = filmRepository.getFilmLikesCounts();
+        leaderboard.load(likesCounts);
+
+        Map<Long, Long> stored = filmRepository.getStoredLikesCounts();
+        likesCounts.forEach((filmId, likes) -> {
+            if (!likes.equals(stored.get(filmId))) {
+                unsyncedFilmIds.add(filmId);
+            }
+        });
+        int synced = syncLikesCounts();
+        log.info("Film leaderboard warmed up with {} films, {} stored like counts updated",
+                likesCounts.size(), synced);
+    }
+
+    @PreDestroy
+    public void shutDown() {
+        likeWriteBehind.flush();
+        syncLikesCounts();
+    }
+
+    /**
+     * Записывает изменившиеся счётчики лайков в films.like_count.
+     *
+     * @return количество обновлённых фильмов
+     */
+    @Scheduled(initialDelayString = "${filmorate.like-count-sync-interval:PT5S}",
+            fixedDelayString = "${filmorate.like-count-sync-interval:PT5S}")
+    public int syncLikesCounts() {
+        Map<Long, Long> likesCounts = new HashMap<>();
+        // пометка снимается до чтения счётчика: лайк, пришедший после чтения, снова пометит фильм
+        Iterator<Long> unsynced = unsyncedFilmIds.iterator();
+        while (unsynced.hasNext()) {
+            Long filmId = unsynced.next();
+            unsynced.remove();
+            likesCounts.put(filmId, leaderboard.getLikesCount(filmId));
+        }
+
+        try {
+            filmRepository.updateStoredLikesCounts(likesCounts);
+        } catch (RuntimeException e) {
+            unsyncedFilmIds.addAll(likesCounts.keySet());
+            throw e;
+        }
+        return likesCounts.size();
+    }
+
+    @Scheduled(initialDelayString = "${filmorate.like-count-check-interval:PT1H}",
+            fixedDelayString = "${filmorate.like-count-check-interval:PT1H}")
+    public void verifyLikesCounts() {
+        int mismatches = checkLeaderboardConsistency();
+        if (mismatches > 0) {
+            log.warn("Fixed like counters for {} films", mismatches);
+        }
+    }
 
     @Override
     public Long createFilm(Film newFilm) {
+        validateReferences(newFilm);
+
         Long newFilmId = filmRepository.createFilm(newFilm);
 
         if (newFilm.getGenres() != null) {
             filmRepository.addFilmGenres(newFilmId, newFilm.getGenres());
         }
+        registerInLeaderboard(List.of(newFilmId));
 
         return newFilmId;
     }
 
+    @Override
+    @Transactional
+    public List<Long> createFilms(List<Film> newFilms) {
+        newFilms.forEach(this::validateReferences);
+
+        List<Long> newFilmIds = filmRepository.createFilms(newFilms);
+
+        Map<Long, List<Genre>> genresByFilmId = new HashMap<>();
+        for (int i = 0; i < newFilms.size(); i++) {
+            if (newFilms.get(i).getGenres() != null) {
+                genresByFilmId.put(newFilmIds.get(i), newFilms.get(i).getGenres());
+            }
+        }
+        filmRepository.addFilmsGenres(genresByFilmId);
+        registerInLeaderboard(newFilmIds);
+
+        return newFilmIds;
+    }
+
     @Override
     public Collection<Film> getFilms() {
         Collection<Film> films = filmRepository.getAllFilms();
@@ -38,17 +144,61 @@ public class FilmDbStorage implements FilmStorage {
         return films;
     }
 
+    @Override
+    public Collection<Film> getFilmsPage(long afterFilmId, int limit) {
+        List<Film> films = filmRepository.getHydratedFilmsPage(afterFilmId, limit);
+
+        addLikesToFilms(films, true);
+
+        return films;
+    }
+
+
+    @Override
+    public void forEachFilmChunk(int chunkSize, Consumer<List<Film>> chunkConsumer) {
+        // постранично по ключу, а не курсором: каждый запрос берёт соединение из пула и сразу возвращает,
+        // выгрузка не держит второе соединение на всё время чтения
+        long afterFilmId = 0;
+        List<Film> chunk;
+        do {
+            chunk = new ArrayList<>(getFilmsPage(afterFilmId, chunkSize));
+            if (chunk.isEmpty()) {
+                return;
+            }
+            afterFilmId = chunk.getLast().getId();
+            chunkConsumer.accept(chunk);
+        } while (chunk.size() == chunkSize);
+    }
 
     @Override
     public boolean updateFilm(Film filmToUpdate) {
+        validateReferences(filmToUpdate);
+
         return filmRepository.updateFilm(filmToUpdate);
     }
 
     @Override
-    public Optional<Film> getFilmById(long id) {
-        Optional<Film> optionalFilm = filmRepository.getFilmById(id);
-        optionalFilm.ifPresent(this::addCollectionsToFilm);
-        return optionalFilm;
+    public Optional<Film> getFilmById(long id, boolean withLikes) {
+        if (!withLikes) {
+            Optional<Film> optionalFilm = filmRepository.getHydratedFilmById(id);
+            optionalFilm.ifPresent(film -> film.setLikesCount(leaderboard.getLikesCount(id)));
+            return optionalFilm;
+        }
+
+        // лайки читаются по id и не ждут строки фильма; очередь записи - до чтения базы
+        return parallelLookups.both(
+                () -> {
+                    Map<Long, Boolean> pendingLikes = likeWriteBehind.getPendingLikes(id);
+                    return likeWriteBehind.overlay(filmRepository.getFilmUserLikes(id), pendingLikes);
+                },
+                () -> filmRepository.getHydratedFilmById(id),
+                (likes, optionalFilm) -> {
+                    optionalFilm.ifPresent(film -> {
+                        film.setUsersLikes(likes);
+                        film.setLikesCount(likes.size());
+                    });
+                    return optionalFilm;
+                });
     }
 
     @Override
@@ -56,68 +206,221 @@ public class FilmDbStorage implements FilmStorage {
         return filmRepository.getFilmsCount();
     }
 
+    @Override
+    public boolean isFilmExist(long filmId) {
+        return filmRepository.isFilmExist(filmId);
+    }
+
+    @Override
+    public boolean isFilmUserLikeExist(long filmId, long userId) {
+        return likeWriteBehind.isLiked(filmId, userId);
+    }
+
     @Override
     public int addUserLike(long filmId, long userId) {
-        return filmRepository.addFilmUserLikes(filmId, userId);
+        if (likeWriteBehind.isEnabled()) {
+            likeWriteBehind.setLike(filmId, userId, true);
+            return 1;
+        }
+
+        int added = filmRepository.addFilmUserLikes(filmId, userId);
+        if (added > 0) {
+            changeLikesCount(filmId, 1);
+        }
+        return added;
     }
 
     @Override
     public boolean deleteUserLike(long filmId, long userId) {
-        return filmRepository.deleteUserLike(filmId, userId);
+        if (likeWriteBehind.isEnabled()) {
+            likeWriteBehind.setLike(filmId, userId, false);
+            return true;
+        }
+
+        boolean deleted = filmRepository.deleteUserLike(filmId, userId);
+        if (deleted) {
+            changeLikesCount(filmId, -1);
+        }
+        return deleted;
     }
 
     @Override
-    public Collection<Film> getTopFilms(int count) {
-        Collection<Film> films = filmRepository.getTopFilms(count);
+    public Collection<Film> getTopFilms(int count, boolean withLikes) {
+        return getFilmsByIds(leaderboard.getTopFilmIds(count), withLikes);
+    }
 
-        addCollectionsToFilms(films);
+    @Override
+    public List<Film> getFilmsByIds(List<Long> filmIds) {
+        return getFilmsByIds(filmIds, true);
+    }
+
+    private List<Film> getFilmsByIds(List<Long> filmIds, boolean withLikes) {
+        Map<Long, Film> filmsById = filmRepository.getFilmsByIds(filmIds).stream()
+                .collect(Collectors.toMap(Film::getId, film -> film));
+
+        List<Film> films = filmIds.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(ArrayList::new));
+
+        addCollectionsToFilms(films, withLikes);
 
         return films;
     }
 
+    /**
+     * Сверяет рейтинг с агрегатом по films и films_likes и исправляет расхождения.
+     *
+     * @return количество фильмов, для которых рейтинг разошёлся с базой
+     */
+    public int checkLeaderboardConsistency() {
+        // несброшенные лайки ещё не учтены ни в базе, ни в рейтинге
+        likeWriteBehind.flush();
+        Map<Long, Long> expected = filmRepository.getFilmLikesCounts();
+        Map<Long, Long> actual = leaderboard.getLikesCounts();
+
+        Set<Long> filmIds = new HashSet<>(expected.keySet());
+        filmIds.addAll(actual.keySet());
+
+        int mismatches = 0;
+        for (Long filmId : filmIds) {
+            if (!Objects.equals(expected.get(filmId), actual.get(filmId))) {
+                mismatches++;
+                // перечитываем точечно, чтобы не затереть лайки и фильмы, появившиеся во время сверки
+                Optional<Long> likes = filmRepository.getFilmLikesCount(filmId);
+                log.warn("Film leaderboard mismatch for film {}: leaderboard={}, database={}",
+                        filmId, actual.get(filmId), likes.orElse(null));
+                likes.ifPresentOrElse(count -> leaderboard.setLikesCount(filmId, count),
+                        () -> leaderboard.remove(filmId));
+                unsyncedFilmIds.add(filmId);
+            }
+        }
+        syncLikesCounts();
+        return mismatches;
+    }
+
     @Override
     public Optional<MpaRate> getMpaRateById(int mpaId) {
-        return filmRepository.getMpaRateById(mpaId);
+        return referenceDataCache.getMpaRateById(mpaId);
     }
 
     @Override
     public Collection<MpaRate> getMpaRates() {
-        return filmRepository.getMpaRates();
+        return referenceDataCache.getMpaRates();
     }
 
     @Override
     public Optional<Genre> getGenreById(int mpaId) {
-        return filmRepository.getGenreById(mpaId);
+        return referenceDataCache.getGenreById(mpaId);
     }
 
     @Override
     public Collection<Genre> getGenres() {
-        return filmRepository.getGenres();
+        return referenceDataCache.getGenres();
+    }
+
+    private void changeLikesCount(long filmId, int delta) {
+        if (delta > 0) {
+            leaderboard.increment(filmId);
+        } else {
+            leaderboard.decrement(filmId);
+        }
+        unsyncedFilmIds.add(filmId);
+    }
+
+    // проверяет рейтинг и жанры по кэшу справочников до записи, чтобы не оставлять фильм без жанров
+    private void validateReferences(Film film) {
+        if (film.getMpaRate() == null) {
+            throw new ValidationException("MPA rate must be specified");
+        }
+
+        int mpaId = film.getMpaRate().getId();
+        if (referenceDataCache.getMpaRateById(mpaId).isEmpty()) {
+            throw new NotFoundException("mpa_rate index = " + mpaId + " not found");
+        }
+
+        if (film.getGenres() != null) {
+            for (Genre genre : film.getGenres()) {
+                if (referenceDataCache.getGenreById(genre.getId()).isEmpty()) {
+                    throw new NotFoundException("genre_id index = " + genre.getId() + " not found");
+                }
+            }
+        }
+    }
+
+    // внутри транзакции фильмы попадают в рейтинг только после фиксации: откат не оставляет в нём чужих id
+    private void registerInLeaderboard(List<Long> filmIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            filmIds.forEach(leaderboard::register);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                filmIds.forEach(leaderboard::register);
+            }
+        });
     }
 
     private void addCollectionsToFilms(Collection<Film> films) {
+        addCollectionsToFilms(films, true);
+    }
+
+    private void addCollectionsToFilms(Collection<Film> films, boolean withLikes) {
         if (films == null || films.isEmpty()) {
             return;
         }
 
-        Set<Long> filmIds = films.stream()
+        List<Long> filmIds = films.stream()
                 .map(Film::getId)
-                .collect(Collectors.toSet());
+                .toList();
+
+        if (!withLikes) {
+            setGenres(films, filmRepository.getFilmGenresByFilmIds(filmIds));
+            addLikesToFilms(films, false);
+            return;
+        }
 
-        Map<Long, List<Genre>> genresByFilmId = filmRepository.getFilmGenresByFilmIds(filmIds);
-        Map<Long, Set<Long>> likesByFilmId = filmRepository.getFilmLikesByFilmIds(filmIds);
+        // жанры и лайки не зависят друг от друга
+        parallelLookups.both(
+                () -> getLikesByFilmIds(filmIds),
+                () -> filmRepository.getFilmGenresByFilmIds(filmIds),
+                (likesByFilmId, genresByFilmId) -> {
+                    setGenres(films, genresByFilmId);
+                    setLikes(films, likesByFilmId);
+                    return films;
+                });
+    }
 
+    private void setGenres(Collection<Film> films, Map<Long, List<Genre>> genresByFilmId) {
         films.forEach(film -> {
+            referenceDataCache.getMpaRateById(film.getMpaRate().getId()).ifPresent(film::setMpaRate);
             film.setGenres(genresByFilmId.getOrDefault(film.getId(), Collections.emptyList()));
-
-            Set<Long> likes = likesByFilmId.getOrDefault(film.getId(), Collections.emptySet());
-            film.setUsersLikes(new ArrayList<>(likes));
         });
     }
 
-    private void addCollectionsToFilm(Film film) {
-        film.setGenres(filmRepository.getFilmGenres(film.getId()));
+    // лайки целиком или только их количество из рейтинга, без чтения лайков из базы
+    private void addLikesToFilms(Collection<Film> films, boolean withLikes) {
+        if (!withLikes) {
+            films.forEach(film -> film.setLikesCount(leaderboard.getLikesCount(film.getId())));
+            return;
+        }
 
-        film.setUsersLikes(filmRepository.getFilmUserLikes(film.getId()));
+        setLikes(films, getLikesByFilmIds(films.stream()
+                .map(Film::getId)
+                .toList()));
+    }
+
+    private Map<Long, LikeSet> getLikesByFilmIds(List<Long> filmIds) {
+        Map<Long, Map<Long, Boolean>> pendingLikes = likeWriteBehind.getPendingLikes(filmIds);
+        return likeWriteBehind.overlay(filmRepository.getFilmLikesByFilmIds(filmIds), pendingLikes);
+    }
+
+    private void setLikes(Collection<Film> films, Map<Long, LikeSet> likesByFilmId) {
+        films.forEach(film -> {
+            LikeSet likes = likesByFilmId.getOrDefault(film.getId(), LikeSet.EMPTY);
+            film.setUsersLikes(likes);
+            film.setLikesCount(likes.size());
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Рейтинг фильмов по количеству лайков, который поддерживается инкрементально.
+ * В рейтинге есть все фильмы каталога, включая фильмы без лайков. Фильмы упорядочены
+ * по убыванию лайков, при равенстве - по возрастанию id, поэтому страница топа
+ * стабильна и стоит O(count) независимо от размера каталога и числа лайков.
+ * <p>
+ * Лайк только увеличивает счётчик фильма ({@link LongAdder}, без общей блокировки даже для одного
+ * фильма) и помечает фильм изменённым. Упорядоченный рейтинг пересчитывается для изменённых фильмов
+ * при чтении топа, поэтому горячий фильм не упирается в перестановки в рейтинге на каждом лайке.
+ * Блокировку берёт только {@link #setLikesCount}, и только на счётчик своего фильма.
+ */
+public class FilmLeaderboard {
+
+    private static final Comparator<Rank> RANK_ORDER = Comparator.comparingLong(Rank::likes)
+            .reversed()
+            .thenComparingLong(Rank::filmId);
+
+    private final Map<Long, LongAdder> counters = new ConcurrentHashMap<>();
+    // фильмы, у которых счётчик поменялся после последнего пересчёта рейтинга
+    private final Set<Long> changedFilmIds = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Rank> ranks = new ConcurrentHashMap<>();
+    private final NavigableSet<Rank> orderedRanks = new ConcurrentSkipListSet<>(RANK_ORDER);
+
+    public void load(Map<Long, Long> likesByFilmId) {
+        counters.clear();
+        changedFilmIds.clear();
+        ranks.clear();
+        orderedRanks.clear();
+        likesByFilmId.forEach(this::setLikesCount);
+    }
+
+    public void register(long filmId) {
+        counter(filmId);
+        changedFilmIds.add(filmId);
+    }
+
+    public void remove(long filmId) {
+        counters.remove(filmId);
+        changedFilmIds.remove(filmId);
+        ranks.computeIfPresent(filmId, (id, rank) -> {
+            orderedRanks.remove(rank);
+            return null;
+        });
+    }
+
+    public void increment(long filmId) {
+        counter(filmId).increment();
+        changedFilmIds.add(filmId);
+    }
+
+    public void decrement(long filmId) {
+        counter(filmId).decrement();
+        changedFilmIds.add(filmId);
+    }
+
+    /**
+     * Для загрузки и сверки с базой. Счётчик доводится до likes поправкой, а не заменой: лайки, пришедшие
+     * одновременно, остаются поверх нового значения. Установки одного фильма идут по очереди,
+     * иначе две поправки от одного и того же старого значения сложились бы.
+     */
+    public void setLikesCount(long filmId, long likes) {
+        LongAdder counter = counter(filmId);
+        synchronized (counter) {
+            counter.add(likes - counter.sum());
+        }
+        changedFilmIds.add(filmId);
+    }
+
+    public long getLikesCount(long filmId) {
+        LongAdder counter = counters.get(filmId);
+        return counter == null ? 0 : Math.max(counter.sum(), 0);
+    }
+
+    public List<Long> getTopFilmIds(int count) {
+        refreshRanks();
+
+        List<Long> filmIds = new ArrayList<>(Math.max(0, Math.min(count, ranks.size())));
+        // итератор слабо согласован: фильм, переставленный во время обхода, может встретиться дважды
+        Set<Long> seen = new HashSet<>();
+
+        for (Rank rank : orderedRanks) {
+            if (filmIds.size() >= count) {
+                break;
+            }
+            if (seen.add(rank.filmId())) {
+                filmIds.add(rank.filmId());
+            }
+        }
+        return filmIds;
+    }
+
+    public Map<Long, Long> getLikesCounts() {
+        Map<Long, Long> likesByFilmId = new HashMap<>();
+        counters.forEach((filmId, counter) -> likesByFilmId.put(filmId, Math.max(counter.sum(), 0)));
+        return likesByFilmId;
+    }
+
+    private LongAdder counter(long filmId) {
+        LongAdder counter = counters.get(filmId);
+        return counter != null ? counter : counters.computeIfAbsent(filmId, id -> new LongAdder());
+    }
+
+    // пометка снимается до чтения счётчика: лайк, пришедший после чтения, снова пометит фильм
+    private void refreshRanks() {
+        Iterator<Long> changed = changedFilmIds.iterator();
+        while (changed.hasNext()) {
+            Long filmId = changed.next();
+            changed.remove();
+            ranks.compute(filmId, (id, rank) -> {
+                if (counters.containsKey(id)) {
+                    return replace(rank, id, getLikesCount(id));
+                }
+                if (rank != null) {
+                    orderedRanks.remove(rank);
+                }
+                return null;
+            });
+        }
+    }
+
+    // вызывается внутри compute, поэтому перестановки одного фильма сериализованы
+    private Rank replace(Rank current, long filmId, long likes) {
+        if (current != null) {
+            orderedRanks.remove(current);
+        }
+        Rank updated = new Rank(likes, filmId);
+        orderedRanks.add(updated);
+        return updated;
+    }
+
+    private record Rank(long likes, long filmId) {
+    }
+}
@@ -0,0 +1,165 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.FilmRepository;
+import ru.yandex.practicum.filmorate.storage.DenseIdIndex;
+import ru.yandex.practicum.filmorate.storage.IntBitmap;
+import ru.yandex.practicum.filmorate.storage.IntCounter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Рекомендации фильмов по лайкам похожих пользователей (коллаборативная фильтрация).
+ * <p>
+ * Лайки хранятся в памяти дважды, сжатыми битовыми картами {@link IntBitmap}: фильмы каждого
+ * пользователя и пользователи каждого фильма. Загружаются из films_likes при старте, дальше
+ * обновляются при каждом лайке. Похожие пользователи - те, у кого больше всего общих лайков
+ * с пользователем; их фильмы, которых у пользователя ещё нет, получают вес, равный числу общих лайков.
+ * Пользователи и фильмы в битовых картах - плотные индексы {@link DenseIdIndex}, а не id.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmRecommender {
+
+    // сколько самых похожих пользователей учитывается в рекомендациях
+    private static final int NEIGHBOURS_COUNT = 50;
+    private static final int LIKES_FETCH_SIZE = 10_000;
+
+    private final FilmRepository filmRepository;
+
+    // лайки меняются редко и быстро, поэтому достаточно одной блокировки на чтение и запись
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private DenseIdIndex users = new DenseIdIndex();
+    private DenseIdIndex films = new DenseIdIndex();
+    private IntBitmap[] filmsByUser = new IntBitmap[0];
+    private IntBitmap[] usersByFilm = new IntBitmap[0];
+
+    @PostConstruct
+    public void warmUp() {
+        long[] likes = {0};
+
+        lock.writeLock().lock();
+        try {
+            users = new DenseIdIndex();
+            films = new DenseIdIndex();
+            filmsByUser = new IntBitmap[0];
+            usersByFilm = new IntBitmap[0];
+            filmRepository.forEachLike(LIKES_FETCH_SIZE, (filmId, userId) -> {
+                addLikeLocked(filmId, userId);
+                likes[0]++;
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Film recommender loaded: {} likes", likes[0]);
+    }
+
+    public void addLike(long filmId, long userId) {
+        lock.writeLock().lock();
+        try {
+            addLikeLocked(filmId, userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeLike(long filmId, long userId) {
+        lock.writeLock().lock();
+        try {
+            int film = films.indexOf(filmId);
+            int user = users.indexOf(userId);
+            if (film < 0 || user < 0) {
+                return;
+            }
+            if (user < filmsByUser.length && filmsByUser[user] != null) {
+                filmsByUser[user].remove(film);
+            }
+            if (film < usersByFilm.length && usersByFilm[film] != null) {
+                usersByFilm[film].remove(user);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Фильмы, которые нравятся похожим пользователям и ещё не отмечены пользователем,
+     * по убыванию веса, при равенстве - по возрастанию id.
+     *
+     * @param maxVisitedLikes сколько лайков можно просмотреть на каждом из двух шагов: поиске
+     *                        похожих пользователей и подсчёте весов фильмов
+     */
+    public List<Long> getRecommendedFilmIds(long userId, int count, int maxVisitedLikes) {
+        lock.readLock().lock();
+        try {
+            int user = users.indexOf(userId);
+            IntBitmap userFilms = user >= 0 && user < filmsByUser.length ? filmsByUser[user] : null;
+            if (userFilms == null || userFilms.isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            IntCounter commonLikes = countCommonLikes(user, userFilms, maxVisitedLikes);
+            IntCounter filmWeights = new IntCounter(Math.min(maxVisitedLikes, commonLikes.size() * 16));
+            int[] visited = {0};
+
+            for (int neighbour : commonLikes.topKeys(NEIGHBOURS_COUNT, users::idAt)) {
+                int weight = commonLikes.get(neighbour);
+                boolean completed = filmsByUser[neighbour].forEachAndNotWhile(userFilms, film -> {
+                    filmWeights.add(film, weight);
+                    return ++visited[0] < maxVisitedLikes;
+                });
+                if (!completed) {
+                    break;
+                }
+            }
+
+            return Arrays.stream(filmWeights.topKeys(count, films::idAt))
+                    .mapToObj(films::idAt)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // число общих лайков с каждым пользователем, лайкнувшим хотя бы один фильм пользователя
+    private IntCounter countCommonLikes(int user, IntBitmap userFilms, int maxVisitedLikes) {
+        IntCounter commonLikes = new IntCounter(Math.min(maxVisitedLikes, userFilms.cardinality() * 16));
+        int[] visited = {0};
+
+        userFilms.forEachWhile(film -> usersByFilm[film].forEachWhile(other -> {
+            if (other != user) {
+                commonLikes.increment(other);
+            }
+            return ++visited[0] < maxVisitedLikes;
+        }));
+        return commonLikes;
+    }
+
+    private void addLikeLocked(long filmId, long userId) {
+        int film = films.getOrAdd(filmId);
+        int user = users.getOrAdd(userId);
+
+        if (user >= filmsByUser.length) {
+            filmsByUser = Arrays.copyOf(filmsByUser, Math.max(user + 1, filmsByUser.length * 2));
+        }
+        if (film >= usersByFilm.length) {
+            usersByFilm = Arrays.copyOf(usersByFilm, Math.max(film + 1, usersByFilm.length * 2));
+        }
+        if (filmsByUser[user] == null) {
+            filmsByUser[user] = new IntBitmap();
+        }
+        if (usersByFilm[film] == null) {
+            usersByFilm[film] = new IntBitmap();
+        }
+        filmsByUser[user].add(film);
+        usersByFilm[film].add(user);
+    }
+}
@@ -5,25 +5,53 @@ import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MpaRate;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     Long createFilm(Film newFilm);
 
+    List<Long> createFilms(List<Film> newFilms);
+
     Collection<Film> getFilms();
 
+    Collection<Film> getFilmsPage(long afterFilmId, int limit);
+
+    void forEachFilmChunk(int chunkSize, Consumer<List<Film>> chunkConsumer);
+
     boolean updateFilm(Film filmToUpdate);
 
-    Optional<Film> getFilmById(long id);
+    default Optional<Film> getFilmById(long id) {
+        return getFilmById(id, true);
+    }
+
+    /**
+     * @param withLikes false - вместо id лайкнувших пользователей заполняется только {@link Film#getLikesCount()}
+     */
+    Optional<Film> getFilmById(long id, boolean withLikes);
 
     int getFilmsCount();
 
+    boolean isFilmExist(long filmId);
+
+    boolean isFilmUserLikeExist(long filmId, long userId);
+
     int addUserLike(long filmId, long userId);
 
     boolean deleteUserLike(long filmId, long userId);
 
-    Collection<Film> getTopFilms(int count);
+    default Collection<Film> getTopFilms(int count) {
+        return getTopFilms(count, true);
+    }
+
+    Collection<Film> getTopFilms(int count, boolean withLikes);
+
+    /**
+     * @return фильмы в порядке filmIds, несуществующие id пропускаются
+     */
+    List<Film> getFilmsByIds(List<Long> filmIds);
 
     Optional<MpaRate> getMpaRateById(int mpaId);
 
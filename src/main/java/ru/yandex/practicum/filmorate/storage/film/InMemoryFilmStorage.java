@@ -4,40 +4,116 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeSet;
 import ru.yandex.practicum.filmorate.model.MpaRate;
+import ru.yandex.practicum.filmorate.storage.LongHashSet;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+/**
+ * Потокобезопасное хранилище фильмов в памяти. Фильмы лежат в конкурентной упорядоченной карте
+ * (нужна для постраничной выдачи по id), лайки - в примитивных множествах {@link LongHashSet}.
+ * Изменения одного фильма и его лайков сериализуются блокировкой из пула полос по id фильма,
+ * поэтому операции с разными фильмами почти не конкурируют. Наружу отдаются копии фильмов.
+ */
 @Component
 @Qualifier("inMemoryFilmStorage")
 public class InMemoryFilmStorage implements FilmStorage {
 
-    private final HashMap<Long, Film> films = new HashMap<>();
-    private Long filmId = 1L;
+    private static final int STRIPES = 64;
+
+    private final ConcurrentNavigableMap<Long, StoredFilm> films = new ConcurrentSkipListMap<>();
+    private final FilmLeaderboard leaderboard = new FilmLeaderboard();
+    private final AtomicLong filmIds = new AtomicLong(1);
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    public InMemoryFilmStorage() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
 
     @Override
     public Long createFilm(Film newFilm) {
-        newFilm.setId(filmId++);
-        newFilm.setUsersLikes(new ArrayList<>());
-        films.put(newFilm.getId(), newFilm);
-        return newFilm.getId();
+        long newFilmId = filmIds.getAndIncrement();
+        newFilm.setId(newFilmId);
+        newFilm.setUsersLikes(LikeSet.EMPTY);
+
+        films.put(newFilmId, new StoredFilm(newFilm.toBuilder().usersLikes(null).build(), new LongHashSet()));
+        leaderboard.register(newFilmId);
+        return newFilmId;
+    }
+
+    @Override
+    public List<Long> createFilms(List<Film> newFilms) {
+        return newFilms.stream()
+                .map(this::createFilm)
+                .toList();
     }
 
     @Override
     public Collection<Film> getFilms() {
-        return films.values();
+        return films.entrySet()
+                .stream()
+                .map(entry -> snapshot(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
     }
 
     @Override
-    public Collection<Film> getTopFilms(int count) {
-        return films.values()
+    public Collection<Film> getFilmsPage(long afterFilmId, int limit) {
+        return films.tailMap(afterFilmId, false)
+                .entrySet()
                 .stream()
-                .sorted(Comparator.comparingInt((Film film) -> film.getUsersLikes().size()).reversed())
-                .limit(count)
+                .limit(limit)
+                .map(entry -> snapshot(entry.getKey(), entry.getValue()))
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public void forEachFilmChunk(int chunkSize, Consumer<List<Film>> chunkConsumer) {
+        List<Film> chunk = new ArrayList<>(chunkSize);
+
+        for (Map.Entry<Long, StoredFilm> entry : films.entrySet()) {
+            chunk.add(snapshot(entry.getKey(), entry.getValue()));
+            if (chunk.size() == chunkSize) {
+                chunkConsumer.accept(chunk);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            chunkConsumer.accept(chunk);
+        }
+    }
+
+    @Override
+    public Collection<Film> getTopFilms(int count, boolean withLikes) {
+        return getFilmsByIds(leaderboard.getTopFilmIds(count), withLikes);
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Long> filmIds) {
+        return getFilmsByIds(filmIds, true);
+    }
+
+    private List<Film> getFilmsByIds(List<Long> filmIds, boolean withLikes) {
+        List<Film> result = new ArrayList<>(filmIds.size());
+
+        for (Long filmId : filmIds) {
+            StoredFilm stored = films.get(filmId);
+            if (stored != null) {
+                result.add(snapshot(filmId, stored, withLikes));
+            }
+        }
+        return result;
+    }
+
     @Override
     public Optional<MpaRate> getMpaRateById(int mpaId) {
         return Optional.empty();
@@ -60,19 +136,34 @@ public class InMemoryFilmStorage implements FilmStorage {
 
     @Override
     public boolean updateFilm(Film filmToUpdate) {
+        long updatedFilmId = filmToUpdate.getId();
         if (filmToUpdate.getUsersLikes() == null) {
-            filmToUpdate.setUsersLikes(new ArrayList<>());
+            filmToUpdate.setUsersLikes(LikeSet.EMPTY);
+        }
+
+        LongHashSet likes = new LongHashSet(filmToUpdate.getUsersLikes().size());
+        for (long userId : filmToUpdate.getUsersLikes().toLongArray()) {
+            likes.add(userId);
+        }
+
+        ReentrantLock lock = stripe(updatedFilmId);
+        lock.lock();
+        try {
+            films.put(updatedFilmId, new StoredFilm(filmToUpdate.toBuilder().usersLikes(null).build(), likes));
+            leaderboard.setLikesCount(updatedFilmId, likes.size());
+        } finally {
+            lock.unlock();
         }
-        films.put(filmToUpdate.getId(), filmToUpdate);
         return true;
     }
 
     @Override
-    public Optional<Film> getFilmById(long id) {
-        if (films.containsKey(id)) {
-            return Optional.of(films.get(id));
+    public Optional<Film> getFilmById(long id, boolean withLikes) {
+        StoredFilm stored = films.get(id);
+        if (stored == null) {
+            return Optional.empty();
         }
-        return Optional.empty();
+        return Optional.of(snapshot(id, stored, withLikes));
     }
 
     @Override
@@ -80,15 +171,89 @@ public class InMemoryFilmStorage implements FilmStorage {
         return films.size();
     }
 
+    @Override
+    public boolean isFilmExist(long filmId) {
+        return films.containsKey(filmId);
+    }
+
+    @Override
+    public boolean isFilmUserLikeExist(long filmId, long userId) {
+        ReentrantLock lock = stripe(filmId);
+        lock.lock();
+        try {
+            StoredFilm stored = films.get(filmId);
+            return stored != null && stored.likes.contains(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public int addUserLike(long filmId, long userId) {
-        films.get(filmId).getUsersLikes().add(userId);
-        return 1;
+        ReentrantLock lock = stripe(filmId);
+        lock.lock();
+        try {
+            StoredFilm stored = films.get(filmId);
+            if (stored == null || !stored.likes.add(userId)) {
+                return 0;
+            }
+            leaderboard.increment(filmId);
+            return 1;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public boolean deleteUserLike(long filmId, long userId) {
-        films.get(filmId).getUsersLikes().remove(userId);
-        return true;
+        ReentrantLock lock = stripe(filmId);
+        lock.lock();
+        try {
+            StoredFilm stored = films.get(filmId);
+            if (stored == null || !stored.likes.remove(userId)) {
+                return false;
+            }
+            leaderboard.decrement(filmId);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Film snapshot(long filmId, StoredFilm stored) {
+        return snapshot(filmId, stored, true);
+    }
+
+    // копия фильма с лайками на момент чтения; лайки читаются под блокировкой полосы фильма
+    private Film snapshot(long filmId, StoredFilm stored, boolean withLikes) {
+        Film film;
+        LikeSet likes = null;
+        int likesCount;
+
+        ReentrantLock lock = stripe(filmId);
+        lock.lock();
+        try {
+            // фильм мог быть заменён после того, как его достали из карты
+            StoredFilm current = films.getOrDefault(filmId, stored);
+            film = current.film;
+            likesCount = current.likes.size();
+            if (withLikes) {
+                likes = LikeSet.ofSorted(current.likes.toSortedArray());
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return film.toBuilder()
+                .usersLikes(likes)
+                .likesCount(likesCount)
+                .build();
+    }
+
+    private ReentrantLock stripe(long filmId) {
+        return stripes[Long.hashCode(filmId * 0x9E3779B97F4A7C15L) & (STRIPES - 1)];
+    }
+
+    private record StoredFilm(Film film, LongHashSet likes) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,265 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.FilmRepository;
+import ru.yandex.practicum.filmorate.model.LikeSet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Отложенная запись лайков ({@code filmorate.likes-write-behind.*}).
+ * <p>
+ * Лайки и снятия лайков не пишутся в films_likes сразу, а копятся в памяти без обращения к базе:
+ * для каждой пары (фильм, пользователь) хранится только последнее состояние. Фоновый поток сбрасывает
+ * накопленное пакетами, когда набирается batch-size пар или проходит flush-interval-ms. Если накопилось
+ * capacity пар, записывающий поток сам сбрасывает очередь и ждёт окончания записи.
+ * <p>
+ * Чтения лайков накладывают несброшенные изменения на данные из базы. Снимок очереди берётся
+ * до чтения базы: сброс удаляет пары из очереди только после фиксации, поэтому каждое изменение
+ * видно либо в снимке, либо в базе. Реально добавленные и удалённые
+ * строки становятся известны только при сбросе и передаются слушателю {@link #setFlushListener}:
+ * счётчики лайков отстают от списков не больше чем на flush-interval-ms.
+ * При остановке приложения очередь сбрасывается полностью.
+ */
+@Slf4j
+@Component
+public class LikeWriteBehind {
+
+    private final FilmRepository filmRepository;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int capacity;
+
+    // последнее состояние пар по фильмам: true - лайк поставлен, false - снят.
+    // Карта фильма меняется только внутри compute по его ключу
+    private final Map<Long, Map<Long, Boolean>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Semaphore flushRequests = new Semaphore(0);
+    private volatile FilmRepository.LikeCountHandler flushListener = (filmId, userId, delta) -> {
+    };
+    private volatile boolean running;
+    private Thread flusher;
+
+    public LikeWriteBehind(FilmRepository filmRepository,
+                           @Value("${filmorate.likes-write-behind.enabled:false}") boolean enabled,
+                           @Value("${filmorate.likes-write-behind.batch-size:1000}") int batchSize,
+                           @Value("${filmorate.likes-write-behind.flush-interval-ms:100}") long flushIntervalMs,
+                           @Value("${filmorate.likes-write-behind.capacity:100000}") int capacity) {
+        this.filmRepository = filmRepository;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.capacity = capacity;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        flusher = Thread.ofPlatform()
+                .name("likes-write-behind")
+                .daemon()
+                .start(this::flushLoop);
+        log.info("Likes write-behind started: batch size {}, flush interval {} ms, capacity {}",
+                batchSize, flushIntervalMs, capacity);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        flushRequests.release();
+        flusher.join();
+
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Failed to flush {} pending likes on shutdown", pendingCount.get(), e);
+        }
+        log.info("Likes write-behind stopped, {} likes left unflushed", pendingCount.get());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setFlushListener(FilmRepository.LikeCountHandler flushListener) {
+        this.flushListener = flushListener;
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Ставит или снимает лайк в очереди. Повторный лайк или снятие отсутствующего лайка
+     * ничего не меняют в базе при сбросе.
+     */
+    public void setLike(long filmId, long userId, boolean liked) {
+        if (pendingCount.get() >= capacity) {
+            // очередь заполнена: пишем сами, пока фоновый поток не догонит
+            flush();
+        }
+
+        pending.compute(filmId, (id, likes) -> {
+            Map<Long, Boolean> result = likes != null ? likes : new ConcurrentHashMap<>();
+            if (result.put(userId, liked) == null) {
+                pendingCount.incrementAndGet();
+            }
+            return result;
+        });
+
+        if (pendingCount.get() >= batchSize && flushRequests.availablePermits() == 0) {
+            flushRequests.release();
+        }
+    }
+
+    public boolean isLiked(long filmId, long userId) {
+        Map<Long, Boolean> likes = pending.get(filmId);
+        Boolean liked = likes != null ? likes.get(userId) : null;
+        return liked != null ? liked : filmRepository.isFilmUserLikeExist(filmId, userId);
+    }
+
+    /**
+     * Снимок несброшенных изменений фильма. Берётся до чтения лайков из базы.
+     *
+     * @return последнее состояние лайков по id пользователя
+     */
+    public Map<Long, Boolean> getPendingLikes(long filmId) {
+        Map<Long, Boolean> likes = pending.get(filmId);
+        return likes != null ? Map.copyOf(likes) : Map.of();
+    }
+
+    /**
+     * Снимок несброшенных изменений фильмов. Берётся до чтения лайков из базы.
+     *
+     * @return изменения по id фильма; фильмов без изменений в карте нет
+     */
+    public Map<Long, Map<Long, Boolean>> getPendingLikes(Collection<Long> filmIds) {
+        if (pending.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<Long, Map<Long, Boolean>> result = new HashMap<>();
+        for (Long filmId : filmIds) {
+            Map<Long, Boolean> likes = getPendingLikes(filmId);
+            if (!likes.isEmpty()) {
+                result.put(filmId, likes);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param pendingLikes снимок {@link #getPendingLikes(long)}, взятый до чтения stored
+     * @return лайки фильма из базы с несброшенными изменениями
+     */
+    public LikeSet overlay(LikeSet stored, Map<Long, Boolean> pendingLikes) {
+        if (pendingLikes.isEmpty()) {
+            return stored;
+        }
+
+        LikeSet.Builder likes = new LikeSet.Builder();
+        pendingLikes.forEach((userId, liked) -> {
+            if (liked) {
+                likes.add(userId);
+            }
+        });
+        for (long userId : stored.toLongArray()) {
+            if (!pendingLikes.containsKey(userId)) {
+                likes.add(userId);
+            }
+        }
+        return likes.build();
+    }
+
+    /**
+     * @param storedByFilmId лайки из базы; фильмов без лайков в карте может не быть
+     * @param pendingLikes   снимок {@link #getPendingLikes(Collection)}, взятый до чтения storedByFilmId
+     * @return лайки фильмов с несброшенными изменениями
+     */
+    public Map<Long, LikeSet> overlay(Map<Long, LikeSet> storedByFilmId, Map<Long, Map<Long, Boolean>> pendingLikes) {
+        if (pendingLikes.isEmpty()) {
+            return storedByFilmId;
+        }
+
+        Map<Long, LikeSet> result = new HashMap<>(storedByFilmId);
+        pendingLikes.forEach((filmId, likes) ->
+                result.put(filmId, overlay(result.getOrDefault(filmId, LikeSet.EMPTY), likes)));
+        return result;
+    }
+
+    /**
+     * Записывает в базу всё, что накопилось на момент вызова. Изменения, пришедшие во время
+     * записи, остаются в очереди до следующего сброса.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            Map<Long, Map<Long, Boolean>> batch = new HashMap<>();
+            pending.keySet().forEach(filmId -> batch.put(filmId, getPendingLikes(filmId)));
+
+            List<long[]> likes = new ArrayList<>();
+            List<long[]> unlikes = new ArrayList<>();
+            batch.forEach((filmId, changes) -> changes.forEach((userId, liked) ->
+                    (liked ? likes : unlikes).add(new long[]{filmId, userId})));
+            // в порядке первичного ключа соседние строки попадают в одни и те же страницы индекса
+            Comparator<long[]> byKey = Comparator.<long[]>comparingLong(row -> row[0]).thenComparingLong(row -> row[1]);
+            likes.sort(byKey);
+            unlikes.sort(byKey);
+
+            List<long[]> applied = new ArrayList<>();
+            filmRepository.applyFilmUserLikes(likes, unlikes,
+                    (filmId, userId, delta) -> applied.add(new long[]{filmId, userId, delta}));
+            // слушатель узнаёт об изменениях только после фиксации: при повторе сброса они не задвоятся
+            applied.forEach(row -> flushListener.accept(row[0], row[1], (int) row[2]));
+
+            // пара остаётся в очереди, если её состояние поменялось во время записи
+            batch.forEach((filmId, changes) -> pending.computeIfPresent(filmId, (id, current) -> {
+                changes.forEach((userId, liked) -> {
+                    if (current.remove(userId, liked)) {
+                        pendingCount.decrementAndGet();
+                    }
+                });
+                return current.isEmpty() ? null : current;
+            }));
+            log.debug("Flushed {} likes and {} unlikes", likes.size(), unlikes.size());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            try {
+                flushRequests.tryAcquire(flushIntervalMs, TimeUnit.MILLISECONDS);
+                flushRequests.drainPermits();
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed to flush {} pending likes, will retry", pendingCount.get(), e);
+            }
+        }
+    }
+}
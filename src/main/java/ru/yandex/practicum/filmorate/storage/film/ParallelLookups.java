@@ -0,0 +1,114 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.exception.StorageException;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Параллельное выполнение независимых запросов при сборке фильмов ({@code filmorate.async-hydration.*}).
+ * <p>
+ * Один запрос уходит в виртуальный поток, второй выполняется в вызывающем потоке, затем результаты
+ * объединяются. Одновременно в фоне выполняется не больше max-concurrency запросов: когда лимит исчерпан,
+ * а также внутри транзакции (другое соединение не увидит её изменений) запросы выполняются по очереди.
+ * Если фоновый запрос не успел за timeout-ms или второй запрос упал, фоновый поток прерывается.
+ */
+@Component
+public class ParallelLookups {
+
+    private final boolean enabled;
+    private final long timeoutMs;
+    private final Semaphore permits;
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("film-hydration-", 0).factory());
+
+    public ParallelLookups(@Value("${filmorate.async-hydration.enabled:false}") boolean enabled,
+                           @Value("${filmorate.async-hydration.timeout-ms:10000}") long timeoutMs,
+                           @Value("${filmorate.async-hydration.max-concurrency:5}") int maxConcurrency) {
+        this.enabled = enabled;
+        this.timeoutMs = timeoutMs;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return combiner, применённый к результатам forked и inline
+     */
+    public <A, B, R> R both(Supplier<A> forked, Supplier<B> inline, BiFunction<? super A, ? super B, R> combiner) {
+        if (!enabled || TransactionSynchronizationManager.isActualTransactionActive() || !permits.tryAcquire()) {
+            A first = forked.get();
+            return combiner.apply(first, inline.get());
+        }
+
+        // разрешение возвращается до того, как результат станет виден вызывающему потоку,
+        // а done() возвращает его, если задачу отменили до запуска
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        };
+        FutureTask<A> task = new FutureTask<>(() -> {
+            try {
+                return forked.get();
+            } finally {
+                release.run();
+            }
+        }) {
+            @Override
+            protected void done() {
+                release.run();
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+
+        B second;
+        try {
+            second = inline.get();
+        } catch (RuntimeException | Error e) {
+            task.cancel(true);
+            throw e;
+        }
+        return combiner.apply(join(task), second);
+    }
+
+    private <A> A join(Future<A> task) {
+        try {
+            return task.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            throw new StorageException("Film lookup timed out after " + timeoutMs + " ms");
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while waiting for film lookup");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
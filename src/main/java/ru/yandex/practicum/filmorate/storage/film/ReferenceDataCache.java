@@ -0,0 +1,150 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.FilmRepository;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRate;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Кэш справочников рейтингов MPA и жанров. Загружается при старте и перечитывается
+ * по расписанию ({@code filmorate.reference-data-ttl}) или вызовом {@link #refresh()}.
+ * Поиск по id - обращение к неизменяемой карте готовых Optional, без запросов к базе; при перечитывании
+ * карта подменяется целиком.
+ * Если id нет в кэше, справочник перечитывается из базы, но не чаще раза в {@link #MISS_RELOAD_INTERVAL_MS} мс,
+ * чтобы запросы с несуществующими id не нагружали базу.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReferenceDataCache implements MeterBinder {
+
+    private static final long MISS_RELOAD_INTERVAL_MS = 1000;
+
+    private final FilmRepository filmRepository;
+
+    private final LongAdder mpaHits = new LongAdder();
+    private final LongAdder mpaMisses = new LongAdder();
+    private final LongAdder genreHits = new LongAdder();
+    private final LongAdder genreMisses = new LongAdder();
+
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile long loadedAt;
+
+    @PostConstruct
+    @Scheduled(initialDelayString = "${filmorate.reference-data-ttl:PT10M}",
+            fixedDelayString = "${filmorate.reference-data-ttl:PT10M}")
+    public void refresh() {
+        Snapshot loaded = new Snapshot(
+                index(filmRepository.getMpaRates(), MpaRate::getId),
+                index(filmRepository.getGenres(), Genre::getId));
+
+        snapshot = loaded;
+        loadedAt = System.currentTimeMillis();
+        log.info("Reference data loaded: {} MPA rates, {} genres", loaded.mpaRates.values().size(),
+                loaded.genres.values().size());
+    }
+
+    public Optional<MpaRate> getMpaRateById(int mpaId) {
+        Optional<MpaRate> mpaRate = snapshot.mpaRates.get(mpaId);
+
+        if (mpaRate.isEmpty() && reloadAfterMiss()) {
+            mpaRate = snapshot.mpaRates.get(mpaId);
+        }
+        (mpaRate.isPresent() ? mpaHits : mpaMisses).increment();
+        return mpaRate;
+    }
+
+    public Collection<MpaRate> getMpaRates() {
+        mpaHits.increment();
+        return snapshot.mpaRates.values();
+    }
+
+    public Optional<Genre> getGenreById(int genreId) {
+        Optional<Genre> genre = snapshot.genres.get(genreId);
+
+        if (genre.isEmpty() && reloadAfterMiss()) {
+            genre = snapshot.genres.get(genreId);
+        }
+        (genre.isPresent() ? genreHits : genreMisses).increment();
+        return genre;
+    }
+
+    public Collection<Genre> getGenres() {
+        genreHits.increment();
+        return snapshot.genres.values();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindCounters(registry, "mpa", mpaHits, mpaMisses, cache -> cache.snapshot.mpaRates.values().size());
+        bindCounters(registry, "genres", genreHits, genreMisses, cache -> cache.snapshot.genres.values().size());
+    }
+
+    private void bindCounters(MeterRegistry registry, String cacheName, LongAdder hits, LongAdder misses,
+                              ToIntFunction<ReferenceDataCache> size) {
+        FunctionCounter.builder("filmorate.reference.cache.requests", hits, LongAdder::sum)
+                .tag("cache", cacheName)
+                .tag("result", "hit")
+                .description("Обращения к кэшу справочников")
+                .register(registry);
+        FunctionCounter.builder("filmorate.reference.cache.requests", misses, LongAdder::sum)
+                .tag("cache", cacheName)
+                .tag("result", "miss")
+                .description("Обращения к кэшу справочников")
+                .register(registry);
+        Gauge.builder("filmorate.reference.cache.size", this, size::applyAsInt)
+                .tag("cache", cacheName)
+                .description("Количество записей в кэше справочников")
+                .register(registry);
+    }
+
+    // ReentrantLock, а не synchronized: чтение справочников из базы не должно закреплять виртуальный поток
+    private boolean reloadAfterMiss() {
+        reloadLock.lock();
+        try {
+            if (System.currentTimeMillis() - loadedAt < MISS_RELOAD_INTERVAL_MS) {
+                return false;
+            }
+            refresh();
+            return true;
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private static <T> Index<T> index(Collection<T> items, ToIntFunction<T> id) {
+        Map<Integer, Optional<T>> byId = new HashMap<>();
+        List<T> sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparingInt(id));
+        sorted.forEach(item -> byId.put(id.applyAsInt(item), Optional.of(item)));
+
+        return new Index<>(Map.copyOf(byId), List.copyOf(sorted));
+    }
+
+    private record Index<T>(Map<Integer, Optional<T>> byId, List<T> values) {
+
+        Optional<T> get(int id) {
+            return byId.getOrDefault(id, Optional.empty());
+        }
+    }
+
+    private record Snapshot(Index<MpaRate> mpaRates, Index<Genre> genres) {
+
+        static final Snapshot EMPTY = new Snapshot(new Index<>(Map.of(), List.of()), new Index<>(Map.of(), List.of()));
+    }
+}
@@ -0,0 +1,350 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.storage.DenseIdIndex;
+import ru.yandex.practicum.filmorate.storage.IntCounter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+
+/**
+ * Граф дружбы в памяти для подбора друзей друзей.
+ * <p>
+ * Основа - сжатое представление CSR: друзья пользователя u лежат отсортированными в
+ * {@code targets[offsets[u]..offsets[u + 1])}, всего два массива int на весь граф. Пользователи
+ * в графе - плотные индексы {@link DenseIdIndex}, а не id: размер массивов не зависит от величины id.
+ * Изменения из {@code addFriend}/{@code deleteFriend} пишутся как новые строки смежности
+ * в карту поверх основы. Когда изменённых строк становится больше порога, они вливаются
+ * в новую основу в фоновом потоке; на время уплотнения изменённые строки замораживаются,
+ * а новые записи идут в свежую карту, поэтому запись и чтение не ждут перестроения графа.
+ */
+@Slf4j
+public class FriendGraph {
+
+    private static final int[] NO_FRIENDS = new int[0];
+
+    private final int compactionThreshold;
+    // запись берёт разделяемую блокировку, смена снимка - исключительную
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final Lock compactionLock = new ReentrantLock();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    private volatile Snapshot snapshot = new Snapshot(new DenseIdIndex(), new int[]{0}, NO_FRIENDS, Map.of(),
+            new ConcurrentHashMap<>());
+
+    public FriendGraph(int compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    public void load(Builder builder) {
+        snapshotLock.writeLock().lock();
+        try {
+            snapshot = new Snapshot(builder.users, builder.offsets(), builder.targets(), Map.of(),
+                    new ConcurrentHashMap<>());
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    public void addFriend(long userId, long friendId) {
+        updateRow(userId, (users, row) -> {
+            int friend = users.getOrAdd(friendId);
+            int position = Arrays.binarySearch(row, friend);
+            if (position >= 0) {
+                return row;
+            }
+            int insertAt = -position - 1;
+            int[] updated = new int[row.length + 1];
+            System.arraycopy(row, 0, updated, 0, insertAt);
+            updated[insertAt] = friend;
+            System.arraycopy(row, insertAt, updated, insertAt + 1, row.length - insertAt);
+            return updated;
+        });
+    }
+
+    public void deleteFriend(long userId, long friendId) {
+        updateRow(userId, (users, row) -> {
+            int friend = users.indexOf(friendId);
+            int position = friend < 0 ? -1 : Arrays.binarySearch(row, friend);
+            if (position < 0) {
+                return row;
+            }
+            int[] updated = new int[row.length - 1];
+            System.arraycopy(row, 0, updated, 0, position);
+            System.arraycopy(row, position + 1, updated, position, row.length - position - 1);
+            return updated;
+        });
+    }
+
+    public void setFriends(long userId, long[] friendIds) {
+        updateRow(userId, (users, current) -> {
+            int[] row = new int[friendIds.length];
+            for (int i = 0; i < friendIds.length; i++) {
+                row[i] = users.getOrAdd(friendIds[i]);
+            }
+            Arrays.sort(row);
+            return row;
+        });
+    }
+
+    /**
+     * Друзья друзей пользователя, которые ещё не в его друзьях, по убыванию числа общих друзей,
+     * при равенстве - по возрастанию id. Обход ограничен {@code maxVisitedEdges} рёбрами второго
+     * уровня: для пользователей с очень большим окружением результат приблизительный.
+     */
+    public List<Suggestion> getSuggestions(long userId, int count, int maxVisitedEdges) {
+        Snapshot current = snapshot;
+        int user = current.users.indexOf(userId);
+        if (user < 0) {
+            return List.of();
+        }
+        int[] friends = current.row(user);
+
+        IntCounter counter = new IntCounter(Math.min(maxVisitedEdges, estimateCandidates(current, friends)));
+        int visited = 0;
+
+        for (int friend : friends) {
+            // строки основы обходятся прямо в targets, без копирования
+            int[] row = current.changedRow(friend);
+            int from = 0;
+            int to;
+            if (row == null) {
+                row = current.targets;
+                from = current.rowStart(friend);
+                to = current.rowEnd(friend);
+            } else {
+                to = row.length;
+            }
+
+            for (int i = from; i < to; i++) {
+                if (visited++ >= maxVisitedEdges) {
+                    return top(current.users, counter, count);
+                }
+                int candidate = row[i];
+                if (candidate != user && Arrays.binarySearch(friends, candidate) < 0) {
+                    counter.increment(candidate);
+                }
+            }
+        }
+        return top(current.users, counter, count);
+    }
+
+    public int getPendingRowsCount() {
+        Snapshot current = snapshot;
+        return current.frozen.size() + current.overrides.size();
+    }
+
+    /**
+     * Вливает изменённые строки в новую основу CSR.
+     */
+    public void compact() {
+        compactionLock.lock();
+        try {
+            Snapshot frozen;
+            snapshotLock.writeLock().lock();
+            try {
+                // строки, замороженные неудавшимся уплотнением, ещё не влиты в основу
+                Map<Integer, int[]> rows = snapshot.overrides;
+                if (!snapshot.frozen.isEmpty()) {
+                    rows = new HashMap<>(snapshot.frozen);
+                    rows.putAll(snapshot.overrides);
+                }
+                frozen = new Snapshot(snapshot.users, snapshot.offsets, snapshot.targets, rows,
+                        new ConcurrentHashMap<>());
+                snapshot = frozen;
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+
+            int maxUser = frozen.offsets.length - 2;
+            for (int user : frozen.frozen.keySet()) {
+                maxUser = Math.max(maxUser, user);
+            }
+
+            int[] offsets = new int[maxUser + 2];
+            long edges = 0;
+            for (int user = 0; user <= maxUser; user++) {
+                offsets[user] = Math.toIntExact(edges);
+                int[] row = frozen.frozen.get(user);
+                edges += row != null ? row.length : frozen.baseRowLength(user);
+            }
+            offsets[maxUser + 1] = Math.toIntExact(edges);
+
+            int[] targets = new int[offsets[maxUser + 1]];
+            for (int user = 0; user <= maxUser; user++) {
+                int[] row = frozen.frozen.get(user);
+                if (row != null) {
+                    System.arraycopy(row, 0, targets, offsets[user], row.length);
+                } else {
+                    System.arraycopy(frozen.targets, frozen.rowStart(user), targets, offsets[user],
+                            frozen.rowEnd(user) - frozen.rowStart(user));
+                }
+            }
+
+            snapshotLock.writeLock().lock();
+            try {
+                snapshot = new Snapshot(frozen.users, offsets, targets, Map.of(), snapshot.overrides);
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    // индексы выдаются внутри блокировки: load не подменит нумерацию между выдачей индекса и записью строки
+    private void updateRow(long userId, BiFunction<DenseIdIndex, int[], int[]> update) {
+        boolean compactionNeeded;
+
+        snapshotLock.readLock().lock();
+        try {
+            Snapshot current = snapshot;
+            int user = current.users.getOrAdd(userId);
+            current.overrides.compute(user, (key, row) -> update.apply(current.users,
+                    row != null ? row : current.baseOrFrozenRow(key)));
+            compactionNeeded = current.overrides.size() > compactionThreshold;
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+
+        // перестроение большого графа занимает секунды, поэтому идёт в фоне, а не в потоке записи;
+        // порог могли превысить сразу несколько писателей, уплотнение запускает только первый
+        if (compactionNeeded && compacting.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    compact();
+                } catch (RuntimeException | Error e) {
+                    // будущее никто не ждёт: без записи в лог изменённые строки копились бы молча
+                    log.error("Failed to compact friend graph with {} pending rows, will retry on next write",
+                            getPendingRowsCount(), e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    private static List<Suggestion> top(DenseIdIndex users, IntCounter counter, int count) {
+        int[] top = counter.topKeys(count, users::idAt);
+        Suggestion[] suggestions = new Suggestion[top.length];
+        for (int i = 0; i < top.length; i++) {
+            suggestions[i] = new Suggestion(users.idAt(top[i]), counter.get(top[i]));
+        }
+        return List.of(suggestions);
+    }
+
+    private static int estimateCandidates(Snapshot current, int[] friends) {
+        long candidates = 0;
+        for (int friend : friends) {
+            int[] row = current.changedRow(friend);
+            candidates += row != null ? row.length : current.baseRowLength(friend);
+        }
+        return (int) Math.min(candidates, Integer.MAX_VALUE);
+    }
+
+    public record Suggestion(long userId, int mutualFriends) {
+    }
+
+    private record Snapshot(DenseIdIndex users, int[] offsets, int[] targets, Map<Integer, int[]> frozen,
+                            ConcurrentHashMap<Integer, int[]> overrides) {
+
+        int[] row(int user) {
+            int[] row = changedRow(user);
+            return row != null ? row : Arrays.copyOfRange(targets, rowStart(user), rowEnd(user));
+        }
+
+        int[] baseOrFrozenRow(int user) {
+            int[] row = frozen.get(user);
+            return row != null ? row : Arrays.copyOfRange(targets, rowStart(user), rowEnd(user));
+        }
+
+        int[] changedRow(int user) {
+            int[] row = overrides.get(user);
+            return row != null ? row : frozen.get(user);
+        }
+
+        // пользователи вне основы - пустые строки
+        int rowStart(int user) {
+            return user >= 0 && user < offsets.length - 1 ? offsets[user] : 0;
+        }
+
+        int rowEnd(int user) {
+            return user >= 0 && user < offsets.length - 1 ? offsets[user + 1] : 0;
+        }
+
+        int baseRowLength(int user) {
+            return rowEnd(user) - rowStart(user);
+        }
+    }
+
+    /**
+     * Собирает основу CSR из рёбер в любом порядке: рёбра раскладываются по строкам подсчётом,
+     * друзья внутри строки сортируются.
+     */
+    public static class Builder {
+
+        private final DenseIdIndex users = new DenseIdIndex();
+        private int[] sources = new int[16];
+        private int[] targets = new int[16];
+        private int edges;
+        private int[] builtOffsets;
+        private int[] builtTargets;
+
+        public Builder add(long userId, long friendId) {
+            if (edges == targets.length) {
+                sources = Arrays.copyOf(sources, edges * 2);
+                targets = Arrays.copyOf(targets, edges * 2);
+            }
+            sources[edges] = users.getOrAdd(userId);
+            targets[edges] = users.getOrAdd(friendId);
+            edges++;
+            builtOffsets = null;
+            return this;
+        }
+
+        int[] offsets() {
+            build();
+            return builtOffsets;
+        }
+
+        int[] targets() {
+            build();
+            return builtTargets;
+        }
+
+        private void build() {
+            if (builtOffsets != null) {
+                return;
+            }
+            int[] offsets = new int[users.size() + 1];
+            for (int i = 0; i < edges; i++) {
+                offsets[sources[i] + 1]++;
+            }
+            for (int user = 0; user < offsets.length - 1; user++) {
+                offsets[user + 1] += offsets[user];
+            }
+
+            int[] rows = new int[edges];
+            int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+            for (int i = 0; i < edges; i++) {
+                rows[next[sources[i]]++] = targets[i];
+            }
+            for (int user = 0; user < offsets.length - 1; user++) {
+                Arrays.sort(rows, offsets[user], offsets[user + 1]);
+            }
+
+            builtOffsets = offsets;
+            builtTargets = rows;
+        }
+    }
+}
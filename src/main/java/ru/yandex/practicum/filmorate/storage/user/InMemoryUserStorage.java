@@ -2,67 +2,229 @@ package ru.yandex.practicum.filmorate.storage.user;
 
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.LongHashSet;
+import ru.yandex.practicum.filmorate.storage.SortedLongArrays;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Потокобезопасное хранилище пользователей в памяти. Дружба хранится списком смежности:
+ * у каждого пользователя примитивное множество id друзей {@link LongHashSet}, без упаковки в Long.
+ * Изменения друзей одного пользователя сериализуются блокировкой из пула полос по его id.
+ * Наружу отдаются копии пользователей. Пользователи не удаляются, а id выдаются подряд,
+ * поэтому упорядоченный обход идёт по диапазону id без упорядоченной карты.
+ * Для рекомендаций друзей изменения дружбы дублируются в {@link FriendGraph}.
+ */
 @Component
 @Qualifier("inMemoryUserStorage")
 public class InMemoryUserStorage implements UserStorage {
 
-    private final HashMap<Long, User> users = new HashMap<>();
-    private Long userId = 1L;
+    private static final int STRIPES = 64;
+    private static final int FRIEND_GRAPH_COMPACTION_THRESHOLD = 10_000;
+
+    private final Map<Long, StoredUser> users = new ConcurrentHashMap<>();
+    private final AtomicLong userIds = new AtomicLong(1);
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final FriendGraph friendGraph = new FriendGraph(FRIEND_GRAPH_COMPACTION_THRESHOLD);
+
+    public InMemoryUserStorage() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
 
     @Override
     public Long createUser(User newUser) {
-        newUser.setId(userId++);
+        long newUserId = userIds.getAndIncrement();
+        newUser.setId(newUserId);
         newUser.setFriends(new HashSet<>());
-        users.put(newUser.getId(), newUser);
-        return newUser.getId();
+
+        users.put(newUserId, new StoredUser(newUser.toBuilder().friends(null).build(), new LongHashSet()));
+        return newUserId;
     }
 
     @Override
     public Collection<User> getUsers() {
-        return users.values();
+        return getUsersPage(0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Collection<User> getUsersPage(long afterUserId, int limit) {
+        List<User> page = new ArrayList<>(Math.min(limit, users.size()));
+        long nextUserId = userIds.get();
+
+        for (long id = Math.max(afterUserId, 0) + 1; id < nextUserId && page.size() < limit; id++) {
+            // id уже выдан, но пользователь ещё не добавлен параллельным createUser
+            StoredUser stored = users.get(id);
+            if (stored != null) {
+                page.add(snapshot(id, stored));
+            }
+        }
+        return page;
     }
 
     @Override
     public boolean updateUser(User userToUpdate) {
+        long updatedUserId = userToUpdate.getId();
         if (userToUpdate.getFriends() == null) {
             userToUpdate.setFriends(new HashSet<>());
         }
-        users.put(userToUpdate.getId(), userToUpdate);
-        return true;
+
+        LongHashSet friends = new LongHashSet(userToUpdate.getFriends().size());
+        userToUpdate.getFriends().forEach(friends::add);
+
+        ReentrantLock lock = stripe(updatedUserId);
+        lock.lock();
+        try {
+            boolean updated = users.replace(updatedUserId,
+                    new StoredUser(userToUpdate.toBuilder().friends(null).build(), friends)) != null;
+            if (updated) {
+                friendGraph.setFriends(updatedUserId, friends.toArray());
+            }
+            return updated;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public Optional<User> findUserById(long id) {
-        Optional<User> userOptional = Optional.empty();
-
-        if (users.containsKey(id)) {
-            userOptional = Optional.of(users.get(id));
+        StoredUser stored = users.get(id);
+        if (stored == null) {
+            return Optional.empty();
         }
-        return userOptional;
+        return Optional.of(snapshot(id, stored));
+    }
+
+    @Override
+    public boolean isUserExist(long id) {
+        return users.containsKey(id);
     }
 
     @Override
     public boolean addFriend(long userId, long friendId) {
-        users.get(userId).getFriends().add(friendId);
-        return true;
+        ReentrantLock lock = stripe(userId);
+        lock.lock();
+        try {
+            StoredUser stored = users.get(userId);
+            if (stored == null || !stored.friends.add(friendId)) {
+                return false;
+            }
+            friendGraph.addFriend(userId, friendId);
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public boolean deleteFriend(long userId, long friendId) {
-        users.get(userId).getFriends().remove(friendId);
-        return true;
+        ReentrantLock lock = stripe(userId);
+        lock.lock();
+        try {
+            StoredUser stored = users.get(userId);
+            if (stored == null || !stored.friends.remove(friendId)) {
+                return false;
+            }
+            friendGraph.deleteFriend(userId, friendId);
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Друзья без их собственных списков друзей, как и в {@link UserDbStorage}.
+     */
     @Override
     public Set<User> getUserFriends(long userId) {
-        return users.get(userId).getFriends()
-                .stream()
-                .map(users::get)
-                .collect(Collectors.toSet());
+        Set<User> friends = new HashSet<>();
+
+        for (long friendId : getFriendIds(userId)) {
+            StoredUser friend = users.get(friendId);
+            if (friend != null) {
+                friends.add(friend.user.toBuilder().build());
+            }
+        }
+        return friends;
+    }
+
+    /**
+     * Пересечение отсортированных массивов id друзей, без их собственных списков друзей.
+     */
+    @Override
+    public List<User> getCommonFriends(long userId, long otherUserId) {
+        long[] commonFriendIds = SortedLongArrays.intersect(getFriendIds(userId), getFriendIds(otherUserId));
+        List<User> commonFriends = new ArrayList<>(commonFriendIds.length);
+
+        for (long friendId : commonFriendIds) {
+            StoredUser friend = users.get(friendId);
+            if (friend != null) {
+                commonFriends.add(friend.user.toBuilder().build());
+            }
+        }
+        return commonFriends;
+    }
+
+    @Override
+    public List<FriendSuggestion> getFriendSuggestions(long userId, int count, int maxVisitedEdges) {
+        List<FriendSuggestion> suggestions = new ArrayList<>();
+
+        for (FriendGraph.Suggestion suggestion : friendGraph.getSuggestions(userId, count, maxVisitedEdges)) {
+            StoredUser candidate = users.get(suggestion.userId());
+            if (candidate != null) {
+                suggestions.add(FriendSuggestion.builder()
+                        .user(candidate.user.toBuilder().build())
+                        .mutualFriends(suggestion.mutualFriends())
+                        .build());
+            }
+        }
+        return suggestions;
+    }
+
+    private long[] getFriendIds(long userId) {
+        ReentrantLock lock = stripe(userId);
+        lock.lock();
+        try {
+            StoredUser stored = users.get(userId);
+            return stored == null ? new long[0] : stored.friends.toSortedArray();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // копия пользователя с друзьями на момент чтения
+    private User snapshot(long userId, StoredUser stored) {
+        User user;
+        long[] friendIds;
+
+        ReentrantLock lock = stripe(userId);
+        lock.lock();
+        try {
+            // пользователь мог быть заменён после того, как его достали из карты
+            StoredUser current = users.getOrDefault(userId, stored);
+            user = current.user;
+            friendIds = current.friends.toArray();
+        } finally {
+            lock.unlock();
+        }
+
+        Set<Long> friends = new HashSet<>(friendIds.length * 4 / 3 + 1);
+        for (long friendId : friendIds) {
+            friends.add(friendId);
+        }
+        return user.toBuilder().friends(friends).build();
+    }
+
+    private ReentrantLock stripe(long userId) {
+        return stripes[Long.hashCode(userId * 0x9E3779B97F4A7C15L) & (STRIPES - 1)];
+    }
+
+    private record StoredUser(User user, LongHashSet friends) {
     }
-}
\ No newline at end of file
+}
@@ -1,23 +1,41 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dal.UserRepository;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
 import ru.yandex.practicum.filmorate.model.User;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Component
 @Qualifier("userDbStorage")
 @RequiredArgsConstructor
 public class UserDbStorage implements UserStorage {
 
+    // сколько изменённых строк графа дружбы копится до его перестроения
+    private static final int FRIEND_GRAPH_COMPACTION_THRESHOLD = 10_000;
+
     private final UserRepository userRepository;
+    private final FriendGraph friendGraph = new FriendGraph(FRIEND_GRAPH_COMPACTION_THRESHOLD);
+
+    @PostConstruct
+    public void warmUpFriendGraph() {
+        FriendGraph.Builder builder = new FriendGraph.Builder();
+        long[] friendships = {0};
+
+        userRepository.forEachFriendship((userId, friendId) -> {
+            builder.add(userId, friendId);
+            friendships[0]++;
+        });
+        friendGraph.load(builder);
+        log.info("Friend graph loaded: {} friendships", friendships[0]);
+    }
 
     @Override
     public Long createUser(User newUser) {
@@ -28,7 +46,16 @@ public class UserDbStorage implements UserStorage {
     public Collection<User> getUsers() {
         Collection<User> users = userRepository.getAllUsers();
 
-        users.forEach(this::addUserFriends);
+        addFriendsToUsers(users);
+
+        return users;
+    }
+
+    @Override
+    public Collection<User> getUsersPage(long afterUserId, int limit) {
+        Collection<User> users = userRepository.getUsersPage(afterUserId, limit);
+
+        addFriendsToUsers(users);
 
         return users;
     }
@@ -47,14 +74,27 @@ public class UserDbStorage implements UserStorage {
         return optionalUser;
     }
 
+    @Override
+    public boolean isUserExist(long id) {
+        return userRepository.isUserExist(id);
+    }
+
     @Override
     public boolean addFriend(long userId, long friendId) {
-        return userRepository.addFriend(userId, friendId);
+        boolean added = userRepository.addFriend(userId, friendId);
+        if (added) {
+            friendGraph.addFriend(userId, friendId);
+        }
+        return added;
     }
 
     @Override
     public boolean deleteFriend(long userId, long friendId) {
-        return userRepository.deleteFriend(userId, friendId);
+        boolean deleted = userRepository.deleteFriend(userId, friendId);
+        if (deleted) {
+            friendGraph.deleteFriend(userId, friendId);
+        }
+        return deleted;
     }
 
     @Override
@@ -62,10 +102,51 @@ public class UserDbStorage implements UserStorage {
         return new HashSet<>(userRepository.getUserFriends(id));
     }
 
+    @Override
+    public List<User> getCommonFriends(long userId, long otherUserId) {
+        return userRepository.getCommonFriends(userId, otherUserId);
+    }
+
+    /**
+     * Кандидаты считаются по графу дружбы в памяти, из базы читаются только сами пользователи.
+     */
+    @Override
+    public List<FriendSuggestion> getFriendSuggestions(long userId, int count, int maxVisitedEdges) {
+        List<FriendGraph.Suggestion> suggestions = friendGraph.getSuggestions(userId, count, maxVisitedEdges);
+        if (suggestions.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, User> usersById = userRepository.getUsersByIds(suggestions.stream()
+                        .map(FriendGraph.Suggestion::userId)
+                        .toList())
+                .stream()
+                .collect(Collectors.toMap(User::getId, user -> user));
+
+        return suggestions.stream()
+                .filter(suggestion -> usersById.containsKey(suggestion.userId()))
+                .map(suggestion -> FriendSuggestion.builder()
+                        .user(usersById.get(suggestion.userId()))
+                        .mutualFriends(suggestion.mutualFriends())
+                        .build())
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
     private void addUserFriends(User user) {
-        user.setFriends(userRepository.getUserFriends(
-                        user.getId()).stream()
+        user.setFriends(userRepository.getUserFriendIds(user.getId()));
+    }
+
+    private void addFriendsToUsers(Collection<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+
+        Set<Long> userIds = users.stream()
                 .map(User::getId)
-                .collect(Collectors.toSet()));
+                .collect(Collectors.toSet());
+
+        Map<Long, Set<Long>> friendsByUserId = userRepository.getFriendIdsByUserIds(userIds);
+
+        users.forEach(user -> user.setFriends(friendsByUserId.getOrDefault(user.getId(), new HashSet<>())));
     }
 }
\ No newline at end of file
@@ -1,8 +1,10 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -12,13 +14,30 @@ public interface UserStorage {
 
     Collection<User> getUsers();
 
+    Collection<User> getUsersPage(long afterUserId, int limit);
+
     boolean updateUser(User userToUpdate);
 
     Optional<User> findUserById(long id);
 
+    boolean isUserExist(long id);
+
     boolean addFriend(long userId, long friendId);
 
     boolean deleteFriend(long userId, long friendId);
 
     Set<User> getUserFriends(long id);
+
+    /**
+     * @return общие друзья двух пользователей по возрастанию id
+     */
+    List<User> getCommonFriends(long userId, long otherUserId);
+
+    /**
+     * Друзья друзей пользователя, которых нет среди его друзей, по убыванию количества общих друзей,
+     * при равенстве - по возрастанию id. Пользователи возвращаются без списков друзей.
+     *
+     * @param maxVisitedEdges сколько связей второго уровня можно обойти за запрос
+     */
+    List<FriendSuggestion> getFriendSuggestions(long userId, int count, int maxVisitedEdges);
 }
\ No newline at end of file
@@ -11,9 +11,12 @@ CREATE TABLE IF NOT EXISTS films
     description  varchar(200),
     release_date date         NOT NULL,
     duration     int          NOT NULL,
-    mpa_rate     int REFERENCES mpa_rate(mpa_id)
+    mpa_rate     int
     );
 
+-- счётчик лайков, который периодически записывается из памяти; точное значение - COUNT(*) по films_likes
+ALTER TABLE films ADD COLUMN IF NOT EXISTS like_count bigint NOT NULL DEFAULT 0;
+
 
 CREATE TABLE IF NOT EXISTS genres
 (
@@ -24,8 +27,8 @@ CREATE TABLE IF NOT EXISTS genres
 
 CREATE TABLE IF NOT EXISTS films_genres
 (
-    film_id  bigint REFERENCES films (film_id),
-    genre_id integer REFERENCES genres (genre_id),
+    film_id  bigint,
+    genre_id integer,
     PRIMARY KEY (film_id, genre_id)
     );
 
@@ -40,14 +43,38 @@ CREATE TABLE IF NOT EXISTS users
 
 CREATE TABLE IF NOT EXISTS films_likes
 (
-    film_id bigint REFERENCES films (film_id),
-    user_id integer REFERENCES users (user_id),
+    film_id bigint,
+    user_id integer,
     PRIMARY KEY (film_id, user_id)
     );
 
 CREATE TABLE IF NOT EXISTS users_friends
 (
-    user_id   integer REFERENCES users (user_id),
-    friend_id integer REFERENCES users (user_id),
+    user_id   integer,
+    friend_id integer,
     PRIMARY KEY (user_id, friend_id)
-    );
\ No newline at end of file
+    );
+
+-- индексы для обратных ссылок: поиск лайков пользователя, подписчиков пользователя, фильмов рейтинга и жанра.
+-- Для прямых ссылок (film_id в films_likes и films_genres, user_id в users_friends) хватает первичного ключа
+CREATE INDEX IF NOT EXISTS films_mpa_rate_idx ON films (mpa_rate);
+CREATE INDEX IF NOT EXISTS films_genres_genre_id_idx ON films_genres (genre_id);
+CREATE INDEX IF NOT EXISTS films_likes_user_id_idx ON films_likes (user_id);
+CREATE INDEX IF NOT EXISTS users_friends_friend_id_idx ON users_friends (friend_id);
+
+-- внешние ключи добавляются после индексов: для обратных ссылок H2 проверяет ключ по индексам выше,
+-- а не создаёт на каждую ссылку ещё один безымянный индекс
+ALTER TABLE films ADD CONSTRAINT IF NOT EXISTS films_mpa_rate_fk
+    FOREIGN KEY (mpa_rate) REFERENCES mpa_rate (mpa_id);
+ALTER TABLE films_genres ADD CONSTRAINT IF NOT EXISTS films_genres_film_id_fk
+    FOREIGN KEY (film_id) REFERENCES films (film_id);
+ALTER TABLE films_genres ADD CONSTRAINT IF NOT EXISTS films_genres_genre_id_fk
+    FOREIGN KEY (genre_id) REFERENCES genres (genre_id);
+ALTER TABLE films_likes ADD CONSTRAINT IF NOT EXISTS films_likes_film_id_fk
+    FOREIGN KEY (film_id) REFERENCES films (film_id);
+ALTER TABLE films_likes ADD CONSTRAINT IF NOT EXISTS films_likes_user_id_fk
+    FOREIGN KEY (user_id) REFERENCES users (user_id);
+ALTER TABLE users_friends ADD CONSTRAINT IF NOT EXISTS users_friends_user_id_fk
+    FOREIGN KEY (user_id) REFERENCES users (user_id);
+ALTER TABLE users_friends ADD CONSTRAINT IF NOT EXISTS users_friends_friend_id_fk
+    FOREIGN KEY (friend_id) REFERENCES users (user_id);
\ No newline at end of file
@@ -1,41 +1,112 @@
 package ru.yandex.practicum.filmorate;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Status;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.HandlerMapping;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.Logbook;
+import org.zalando.logbook.Precorrelation;
+import org.zalando.logbook.Sink;
+import org.zalando.logbook.servlet.LogbookFilter;
+import ru.yandex.practicum.filmorate.controller.ErrorHandler;
+import ru.yandex.practicum.filmorate.controller.SampledHttpLogStrategy;
+import ru.yandex.practicum.filmorate.controller.film.FilmController;
+import ru.yandex.practicum.filmorate.controller.film.UserController;
+import ru.yandex.practicum.filmorate.dal.ConnectionLimitingDataSource;
+import ru.yandex.practicum.filmorate.dal.ConnectionPoolHealthIndicator;
 import ru.yandex.practicum.filmorate.dal.FilmRepository;
 import ru.yandex.practicum.filmorate.dal.UserRepository;
+import ru.yandex.practicum.filmorate.dal.stats.QueryStats;
+import ru.yandex.practicum.filmorate.dal.stats.QueryStatsAdvisor;
+import ru.yandex.practicum.filmorate.dal.stats.QueryStatsEndpoint;
+import ru.yandex.practicum.filmorate.dal.stats.RequestQueriesFilter;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.StorageException;
+import ru.yandex.practicum.filmorate.mapper.film.FilmResultSetExtractor;
 import ru.yandex.practicum.filmorate.mapper.film.FilmRowMapper;
 import ru.yandex.practicum.filmorate.mapper.film.GenreRowMapper;
 import ru.yandex.practicum.filmorate.mapper.film.MpaRateRowMapper;
 import ru.yandex.practicum.filmorate.mapper.user.UserRowMapper;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeSet;
 import ru.yandex.practicum.filmorate.model.MpaRate;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.IntBitmap;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.film.FilmRecommender;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeWriteBehind;
+import ru.yandex.practicum.filmorate.storage.film.ParallelLookups;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLTransientConnectionException;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 @Import({FilmDbStorage.class, FilmRepository.class, FilmRowMapper.class, MpaRateRowMapper.class, GenreRowMapper.class,
-        UserDbStorage.class, UserRepository.class, UserRowMapper.class})
+        FilmResultSetExtractor.class, ReferenceDataCache.class, FilmRecommender.class, LikeWriteBehind.class,
+        ParallelLookups.class, UserDbStorage.class, UserRepository.class, UserRowMapper.class})
 public class FilmoRateApplicationTests {
 
     private final FilmDbStorage filmDbStorage;
+    private final ReferenceDataCache referenceDataCache;
+    private final FilmRepository filmRepository;
+    private final FilmRecommender filmRecommender;
     private final UserDbStorage userStorage;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
 
     @BeforeAll
     public void config() {
@@ -75,6 +146,163 @@ public class FilmoRateApplicationTests {
         assertThat(users).contains(user1Optional.get(), user2Optional.get());
     }
 
+    @Test
+    public void testGetUsersLoadsFriendIds() {
+        userStorage.addFriend(1, 2);
+
+        assertThat(userStorage.getUsers())
+                .filteredOn(user -> user.getId() == 1L)
+                .singleElement()
+                .satisfies(user -> assertThat(user.getFriends()).containsExactly(2L));
+        assertThat(userStorage.getUsers())
+                .filteredOn(user -> user.getId() == 2L)
+                .singleElement()
+                .satisfies(user -> assertThat(user.getFriends()).isEmpty());
+
+        userStorage.deleteFriend(1, 2);
+    }
+
+    @Test
+    public void testGetCommonFriends() {
+        long commonFriendId = userStorage.createUser(buildUser("common"));
+        long otherFriendId = userStorage.createUser(buildUser("other"));
+        userStorage.addFriend(1, commonFriendId);
+        userStorage.addFriend(1, otherFriendId);
+        userStorage.addFriend(2, commonFriendId);
+
+        assertThat(userStorage.getCommonFriends(1, 2)).extracting(User::getId).containsExactly(commonFriendId);
+        assertThat(userStorage.getCommonFriends(2, 1)).extracting(User::getId).containsExactly(commonFriendId);
+    }
+
+    @Test
+    public void testInMemoryGetCommonFriends() {
+        InMemoryUserStorage inMemoryUserStorage = new InMemoryUserStorage();
+        for (int i = 0; i < 100; i++) {
+            inMemoryUserStorage.createUser(buildUser("name" + i));
+        }
+        // у первого пользователя все остальные в друзьях, у второго - только кратные 10:
+        // такой перекос размеров идёт через бинарный поиск, а пара 3 и 4 - через слияние
+        for (long friendId = 3; friendId <= 100; friendId++) {
+            inMemoryUserStorage.addFriend(1, friendId);
+            inMemoryUserStorage.addFriend(3, friendId);
+            if (friendId % 10 == 0) {
+                inMemoryUserStorage.addFriend(2, friendId);
+            }
+            if (friendId % 2 == 0) {
+                inMemoryUserStorage.addFriend(4, friendId);
+            }
+        }
+
+        assertThat(inMemoryUserStorage.getCommonFriends(1, 2)).extracting(User::getId)
+                .containsExactly(10L, 20L, 30L, 40L, 50L, 60L, 70L, 80L, 90L, 100L);
+        assertThat(inMemoryUserStorage.getCommonFriends(3, 4)).extracting(User::getId)
+                .containsExactlyElementsOf(LongStream.rangeClosed(4, 100).filter(id -> id % 2 == 0).boxed().toList());
+        assertThat(inMemoryUserStorage.getCommonFriends(2, 99)).isEmpty();
+    }
+
+    @Test
+    public void testGetFriendSuggestions() {
+        long[] ids = new long[5];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = userStorage.createUser(buildUser("suggest" + i));
+        }
+        // ids[0] дружит с ids[1] и ids[2]; ids[3] - друг обоих, ids[4] - только ids[1]
+        userStorage.addFriend(ids[0], ids[1]);
+        userStorage.addFriend(ids[0], ids[2]);
+        userStorage.addFriend(ids[1], ids[3]);
+        userStorage.addFriend(ids[2], ids[3]);
+        userStorage.addFriend(ids[1], ids[4]);
+        userStorage.addFriend(ids[1], ids[0]);
+        userStorage.addFriend(ids[2], ids[1]);
+
+        assertThat(userStorage.getFriendSuggestions(ids[0], 10, 1000))
+                .extracting(suggestion -> suggestion.getUser().getId(), FriendSuggestion::getMutualFriends)
+                .containsExactly(tuple(ids[3], 2), tuple(ids[4], 1));
+        assertThat(userStorage.getFriendSuggestions(ids[0], 1, 1000))
+                .extracting(suggestion -> suggestion.getUser().getName())
+                .containsExactly("suggest3");
+
+        userStorage.deleteFriend(ids[2], ids[3]);
+        assertThat(userStorage.getFriendSuggestions(ids[0], 10, 1000))
+                .extracting(suggestion -> suggestion.getUser().getId(), FriendSuggestion::getMutualFriends)
+                .containsExactly(tuple(ids[3], 1), tuple(ids[4], 1));
+    }
+
+    @Test
+    public void testFriendGraphCompactionAndWorkLimit() {
+        FriendGraph.Builder builder = new FriendGraph.Builder();
+        for (long friendId = 2; friendId <= 4; friendId++) {
+            builder.add(1, friendId);
+        }
+        builder.add(2, 10).add(2, 11);
+        builder.add(3, 10);
+        builder.add(4, 12);
+
+        FriendGraph graph = new FriendGraph(2);
+        graph.load(builder);
+        assertThat(graph.getSuggestions(1, 10, 100))
+                .containsExactly(new FriendGraph.Suggestion(10, 2), new FriendGraph.Suggestion(11, 1),
+                        new FriendGraph.Suggestion(12, 1));
+        // после двух связей обход останавливается на строке пользователя 2
+        assertThat(graph.getSuggestions(1, 10, 2))
+                .containsExactly(new FriendGraph.Suggestion(10, 1), new FriendGraph.Suggestion(11, 1));
+
+        graph.addFriend(4, 11);
+        graph.deleteFriend(2, 10);
+        graph.addFriend(20, 11);
+        graph.addFriend(1, 20);
+        assertThat(graph.getSuggestions(1, 10, 100))
+                .containsExactly(new FriendGraph.Suggestion(11, 3), new FriendGraph.Suggestion(10, 1),
+                        new FriendGraph.Suggestion(12, 1));
+
+        // уплотнение вливает изменённые строки в основу, в том числе строку нового пользователя
+        graph.compact();
+        assertThat(graph.getPendingRowsCount()).isZero();
+        assertThat(graph.getSuggestions(1, 10, 100))
+                .containsExactly(new FriendGraph.Suggestion(11, 3), new FriendGraph.Suggestion(10, 1),
+                        new FriendGraph.Suggestion(12, 1));
+
+        // id за пределами int получают плотные индексы; равные по числу общих друзей идут по возрастанию id,
+        // даже если индекс id выдан позже
+        long bigId = Integer.MAX_VALUE + 10L;
+        graph.addFriend(4, bigId);
+        graph.addFriend(4, 5);
+        graph.addFriend(bigId, 2);
+        assertThat(graph.getSuggestions(1, 10, 100))
+                .containsExactly(new FriendGraph.Suggestion(11, 3), new FriendGraph.Suggestion(5, 1),
+                        new FriendGraph.Suggestion(10, 1), new FriendGraph.Suggestion(12, 1),
+                        new FriendGraph.Suggestion(bigId, 1));
+        assertThat(graph.getSuggestions(bigId, 10, 100)).containsExactly(new FriendGraph.Suggestion(11, 1));
+    }
+
+    @Test
+    public void testInMemoryGetFriendSuggestions() {
+        InMemoryUserStorage inMemoryUserStorage = new InMemoryUserStorage();
+        for (int i = 1; i <= 4; i++) {
+            inMemoryUserStorage.createUser(buildUser("name" + i));
+        }
+        inMemoryUserStorage.addFriend(1, 2);
+        inMemoryUserStorage.addFriend(2, 3);
+        inMemoryUserStorage.addFriend(2, 4);
+        inMemoryUserStorage.addFriend(1, 4);
+
+        assertThat(inMemoryUserStorage.getFriendSuggestions(1, 10, 100))
+                .extracting(suggestion -> suggestion.getUser().getId(), FriendSuggestion::getMutualFriends)
+                .containsExactly(tuple(3L, 1));
+
+        User user = inMemoryUserStorage.findUserById(1).orElseThrow();
+        user.setFriends(new HashSet<>(Set.of(3L)));
+        inMemoryUserStorage.updateUser(user);
+        assertThat(inMemoryUserStorage.getFriendSuggestions(1, 10, 100)).isEmpty();
+    }
+
+    @Test
+    public void testGetUsersPage() {
+        assertThat(userStorage.getUsersPage(0, 1)).extracting(User::getId).containsExactly(1L);
+        assertThat(userStorage.getUsersPage(1, 1)).extracting(User::getId).containsExactly(2L);
+        assertThat(userStorage.getUsersPage(Long.MAX_VALUE, 10)).isEmpty();
+    }
+
     @Test
     public void testUpdateUser() {
 
@@ -164,6 +392,268 @@ public class FilmoRateApplicationTests {
                 );
     }
 
+    @Test
+    public void testGetFilmByIdHydratesMpaGenresAndLikes() {
+        Film newFilm = buildFilm("hydrated");
+        newFilm.setGenres(List.of(
+                Genre.builder().id(2).build(),
+                Genre.builder().id(1).build()
+        ));
+        long filmId = filmDbStorage.createFilm(newFilm);
+        filmDbStorage.addUserLike(filmId, 2);
+        filmDbStorage.addUserLike(filmId, 1);
+
+        assertThat(filmDbStorage.getFilmById(filmId))
+                .hasValueSatisfying(film -> {
+                    assertThat(film.getName()).isEqualTo("hydrated");
+                    assertThat(film.getMpaRate()).isEqualTo(MpaRate.builder().id(1).name("G").build());
+                    assertThat(film.getGenres()).extracting(Genre::getName).containsExactly("Комедия", "Драма");
+                    assertThat(film.getUsersLikes()).containsExactlyInAnyOrder(1L, 2L);
+                });
+
+        // разреженные id читаются через IN, плотные - диапазоном; результат одинаковый
+        long otherFilmId = filmDbStorage.createFilm(buildFilm("sparse likes"));
+        jdbcTemplate.update("INSERT INTO films_likes (film_id, user_id) VALUES (?, 1), (?, 2)", otherFilmId, otherFilmId);
+        assertThat(filmRepository.getFilmLikesByFilmIds(List.of(otherFilmId + 1000, otherFilmId)))
+                .containsOnlyKeys(otherFilmId)
+                .hasEntrySatisfying(otherFilmId, likes -> assertThat(likes).containsExactly(1L, 2L));
+        assertThat(filmRepository.getFilmLikesByFilmIds(List.of(otherFilmId, otherFilmId + 1)))
+                .hasEntrySatisfying(otherFilmId, likes -> assertThat(likes).containsExactly(1L, 2L));
+        assertThat(filmRepository.getFilmGenresByFilmIds(List.of(filmId + 1000, filmId, otherFilmId)))
+                .containsOnlyKeys(filmId)
+                .hasEntrySatisfying(filmId, genres -> assertThat(genres).extracting(Genre::getId).containsExactly(1, 2));
+    }
+
+    @Test
+    public void testFilmLikesAsLikeSetAndCountOnly() throws Exception {
+        LikeSet likeSet = LikeSet.of(5, 3, 5, 1);
+        assertThat(likeSet).containsExactly(1L, 3L, 5L);
+        assertThat(likeSet.contains(3L)).isTrue();
+        assertThat(likeSet.contains(4L)).isFalse();
+        assertThat(new ObjectMapper().writeValueAsString(likeSet)).isEqualTo("[1,3,5]");
+
+        long filmId = filmDbStorage.createFilm(buildFilm("likes count"));
+        filmDbStorage.addUserLike(filmId, 1);
+        filmDbStorage.addUserLike(filmId, 2);
+
+        assertThat(filmDbStorage.getFilmById(filmId, false)).hasValueSatisfying(film -> {
+            assertThat(film.getUsersLikes()).isNull();
+            assertThat(film.getLikesCount()).isEqualTo(2);
+        });
+        assertThat(filmDbStorage.getTopFilms(Integer.MAX_VALUE, false))
+                .filteredOn(film -> film.getId() == filmId)
+                .singleElement()
+                .satisfies(film -> assertThat(film.getLikesCount()).isEqualTo(2));
+        // рейтинг в памяти не откатывается вместе с транзакцией теста
+        filmDbStorage.deleteUserLike(filmId, 1);
+        filmDbStorage.deleteUserLike(filmId, 2);
+
+        // больше 65536 лайков не помещалось в ARRAY_AGG при чтении фильма
+        int likesCount = 70_000;
+        jdbcTemplate.update("INSERT INTO users (name, email, login, birthday) "
+                + "SELECT 'bulk like', 'email@mail.ru', 'login', DATE '1979-08-15' FROM SYSTEM_RANGE(1, ?)", likesCount);
+        jdbcTemplate.update("INSERT INTO films_likes (film_id, user_id) "
+                + "SELECT ?, user_id FROM users WHERE name = 'bulk like'", filmId);
+
+        assertThat(filmDbStorage.getFilmById(filmId)).hasValueSatisfying(film -> {
+            assertThat(film.getUsersLikes()).hasSize(likesCount).doesNotContain(1L, 2L);
+            assertThat(film.getLikesCount()).isEqualTo(likesCount);
+        });
+    }
+
+    @Test
+    public void testFilmAndLikeExistence() {
+        long filmId = filmDbStorage.createFilm(buildFilm("exists"));
+        long userId = userStorage.createUser(buildUser("exists"));
+        filmDbStorage.addUserLike(filmId, userId);
+
+        assertThat(filmDbStorage.isFilmExist(filmId)).isTrue();
+        assertThat(filmDbStorage.isFilmExist(Long.MAX_VALUE)).isFalse();
+        assertThat(filmDbStorage.isFilmUserLikeExist(filmId, userId)).isTrue();
+        assertThat(filmDbStorage.isFilmUserLikeExist(filmId, Long.MAX_VALUE)).isFalse();
+        assertThat(userStorage.isUserExist(userId)).isTrue();
+        assertThat(userStorage.isUserExist(Long.MAX_VALUE)).isFalse();
+        filmDbStorage.deleteUserLike(filmId, userId);
+        assertThat(filmDbStorage.isFilmUserLikeExist(filmId, userId)).isFalse();
+
+        InMemoryFilmStorage inMemoryFilmStorage = new InMemoryFilmStorage();
+        long inMemoryFilmId = inMemoryFilmStorage.createFilm(buildFilm("exists"));
+        inMemoryFilmStorage.addUserLike(inMemoryFilmId, 7);
+
+        assertThat(inMemoryFilmStorage.isFilmExist(inMemoryFilmId)).isTrue();
+        assertThat(inMemoryFilmStorage.isFilmExist(inMemoryFilmId + 1)).isFalse();
+        assertThat(inMemoryFilmStorage.isFilmUserLikeExist(inMemoryFilmId, 7)).isTrue();
+        assertThat(inMemoryFilmStorage.isFilmUserLikeExist(inMemoryFilmId, 8)).isFalse();
+    }
+
+    @Test
+    public void testLikesWriteBehind() throws Exception {
+        long filmId = filmDbStorage.createFilm(buildFilm("write-behind"));
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            userIds.add(userStorage.createUser(buildUser("write-behind" + i)));
+        }
+        // сброс вызывается из теста: фоновый поток писал бы вне транзакции теста.
+        // У отдельного хранилища свой рейтинг, общий рейтинг тестов эти лайки не видит
+        LikeWriteBehind writeBehind = new LikeWriteBehind(filmRepository, true, 100, 60_000, 3);
+        FilmDbStorage storage = new FilmDbStorage(filmRepository, referenceDataCache, writeBehind,
+                new ParallelLookups(false, 0, 0));
+        storage.warmUpLeaderboard();
+        String countLikes = "SELECT COUNT(*) FROM films_likes WHERE film_id=?";
+
+        storage.addUserLike(filmId, userIds.get(0));
+        storage.addUserLike(filmId, userIds.get(0));
+        storage.addUserLike(filmId, userIds.get(1));
+        storage.deleteUserLike(filmId, userIds.get(1));
+
+        assertThat(writeBehind.getPendingCount()).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject(countLikes, Integer.class, filmId)).isZero();
+        assertThat(storage.getFilmById(filmId, false)).hasValueSatisfying(
+                film -> assertThat(film.getLikesCount()).isZero());
+        assertThat(storage.isFilmUserLikeExist(filmId, userIds.get(0))).isTrue();
+        assertThat(storage.isFilmUserLikeExist(filmId, userIds.get(1))).isFalse();
+        assertThat(storage.getFilmById(filmId)).hasValueSatisfying(film -> {
+            assertThat(film.getUsersLikes()).containsExactly(userIds.get(0));
+            assertThat(film.getLikesCount()).isEqualTo(1);
+        });
+        assertThat(storage.getTopFilms(Integer.MAX_VALUE))
+                .filteredOn(film -> film.getId() == filmId)
+                .singleElement()
+                .satisfies(film -> assertThat(film.getUsersLikes()).containsExactly(userIds.get(0)));
+
+        // снимок очереди берётся до чтения базы: сброс между ними не теряет изменений
+        Map<Long, Boolean> pendingLikes = writeBehind.getPendingLikes(filmId);
+        assertThat(pendingLikes).containsExactlyInAnyOrderEntriesOf(Map.of(userIds.get(0), true, userIds.get(1), false));
+        writeBehind.flush();
+        assertThat(writeBehind.overlay(filmRepository.getFilmUserLikes(filmId), pendingLikes))
+                .containsExactly(userIds.get(0));
+        assertThat(writeBehind.getPendingLikes(List.of(filmId))).isEmpty();
+        assertThat(writeBehind.getPendingCount()).isZero();
+        assertThat(filmRepository.getFilmUserLikes(filmId)).containsExactly(userIds.get(0));
+        // рейтинг меняется при сбросе и только на реально записанные лайки
+        assertThat(storage.getFilmById(filmId, false)).hasValueSatisfying(
+                film -> assertThat(film.getLikesCount()).isEqualTo(1));
+
+        // очередь на 3 пары заполнена: следующий лайк сначала сбрасывает её в базу
+        storage.deleteUserLike(filmId, userIds.get(0));
+        storage.addUserLike(filmId, userIds.get(1));
+        storage.addUserLike(filmId, userIds.get(2));
+        assertThat(writeBehind.getPendingCount()).isEqualTo(3);
+        storage.addUserLike(filmId, userIds.get(0));
+        assertThat(writeBehind.getPendingCount()).isEqualTo(1);
+        assertThat(filmRepository.getFilmUserLikes(filmId)).containsExactly(userIds.get(1), userIds.get(2));
+
+        assertThat(storage.checkLeaderboardConsistency()).isZero();
+        assertThat(filmRepository.getFilmUserLikes(filmId)).containsExactlyElementsOf(userIds);
+    }
+
+    // вне транзакции теста: внутри транзакции запросы выполняются по очереди
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testParallelLookups() throws Exception {
+        ParallelLookups parallelLookups = new ParallelLookups(true, 200, 1);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        Supplier<Boolean> meet = () -> {
+            bothStarted.countDown();
+            try {
+                return bothStarted.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        };
+        boolean concurrent = parallelLookups.both(meet, meet, (first, second) -> first && second);
+        assertThat(concurrent).isTrue();
+
+        // фоновый запрос, не уложившийся в таймаут, прерывается
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Supplier<Integer> hanging = () -> {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return 0;
+        };
+        assertThatThrownBy(() -> parallelLookups.both(hanging, () -> 1, Integer::sum))
+                .isInstanceOf(StorageException.class);
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // ошибка в вызывающем потоке отменяет фоновый запрос и освобождает разрешение
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        Supplier<Integer> cancellable = () -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                cancelled.countDown();
+            }
+            return 0;
+        };
+        assertThatThrownBy(() -> parallelLookups.both(cancellable, () -> {
+            awaitQuietly(started);
+            throw new NotFoundException("inline");
+        }, Integer::sum)).isInstanceOf(NotFoundException.class);
+        assertThat(cancelled.await(5, TimeUnit.SECONDS)).isTrue();
+
+        FilmDbStorage storage = new FilmDbStorage(filmRepository, referenceDataCache,
+                new LikeWriteBehind(filmRepository, false, 0, 0, 0), parallelLookups);
+        storage.warmUpLeaderboard();
+        assertThat(storage.getFilmById(1)).usingRecursiveComparison().isEqualTo(filmDbStorage.getFilmById(1));
+        assertThat(storage.getFilms()).usingRecursiveComparison().isEqualTo(filmDbStorage.getFilms());
+        parallelLookups.shutdown();
+    }
+
+    @Test
+    public void testGetFilmByIdNotFound() {
+        assertThat(filmDbStorage.getFilmById(Long.MAX_VALUE)).isEmpty();
+    }
+
+    @Test
+    public void testFilmGenresValidatedBeforeInsertAndBatched() {
+        int filmsCount = filmDbStorage.getFilmsCount();
+        Film invalidFilm = buildFilm("invalid genres");
+        invalidFilm.setGenres(List.of(Genre.builder().id(1).build(), Genre.builder().id(999).build()));
+
+        assertThatThrownBy(() -> filmDbStorage.createFilm(invalidFilm)).isInstanceOf(NotFoundException.class);
+        assertThat(filmDbStorage.getFilmsCount()).isEqualTo(filmsCount);
+
+        List<Genre> genres = new ArrayList<>(filmDbStorage.getGenres());
+        genres.addAll(filmDbStorage.getGenres());
+        filmRepository.addFilmGenres(1L, genres);
+
+        assertThat(filmDbStorage.getFilmById(1)).hasValueSatisfying(
+                film -> assertThat(film.getGenres()).containsExactlyElementsOf(filmDbStorage.getGenres()));
+    }
+
+    @Test
+    public void testCreateFilmsInBatch() {
+        Film withGenres = buildFilm("batch1");
+        withGenres.setGenres(List.of(Genre.builder().id(3).build(), Genre.builder().id(1).build(),
+                Genre.builder().id(3).build()));
+        Film withoutGenres = buildFilm("batch2");
+        Film invalid = buildFilm("batch3");
+        invalid.setGenres(List.of(Genre.builder().id(999).build()));
+        int filmsCount = filmDbStorage.getFilmsCount();
+
+        assertThatThrownBy(() -> filmDbStorage.createFilms(List.of(withGenres, invalid)))
+                .isInstanceOf(NotFoundException.class);
+        assertThat(filmDbStorage.getFilmsCount()).isEqualTo(filmsCount);
+
+        List<Long> filmIds = filmDbStorage.createFilms(List.of(withGenres, withoutGenres));
+
+        assertThat(filmIds).hasSize(2).doesNotHaveDuplicates();
+        assertThat(filmDbStorage.getFilmById(filmIds.get(0))).hasValueSatisfying(film -> {
+            assertThat(film.getName()).isEqualTo("batch1");
+            assertThat(film.getGenres()).extracting(Genre::getId).containsExactly(1, 3);
+        });
+        assertThat(filmDbStorage.getFilmById(filmIds.get(1))).hasValueSatisfying(film -> {
+            assertThat(film.getName()).isEqualTo("batch2");
+            assertThat(film.getGenres()).isEmpty();
+        });
+    }
+
     @Test
     public void testGetFilms() {
 
@@ -179,6 +669,29 @@ public class FilmoRateApplicationTests {
         assertThat(films).contains(film1Optional.get(), film2Optional.get());
     }
 
+    @Test
+    public void testGetFilmsPage() {
+        Collection<Film> firstPage = filmDbStorage.getFilmsPage(0, 1);
+
+        assertThat(firstPage).extracting(Film::getId).containsExactly(1L);
+        assertThat(firstPage).allSatisfy(film -> assertThat(film.getMpaRate().getName()).isEqualTo("G"));
+        assertThat(filmDbStorage.getFilmsPage(1, 1)).extracting(Film::getId).containsExactly(2L);
+        assertThat(filmDbStorage.getFilmsPage(Long.MAX_VALUE, 10)).isEmpty();
+    }
+
+    @Test
+    public void testForEachFilmChunk() {
+        List<List<Film>> chunks = new ArrayList<>();
+
+        filmDbStorage.forEachFilmChunk(1, chunk -> chunks.add(new ArrayList<>(chunk)));
+
+        assertThat(chunks).hasSize(filmDbStorage.getFilmsCount()).allSatisfy(chunk -> assertThat(chunk).hasSize(1));
+        assertThat(chunks.getFirst()).allSatisfy(film -> {
+            assertThat(film.getId()).isEqualTo(1L);
+            assertThat(film.getMpaRate().getName()).isEqualTo("G");
+        });
+    }
+
     @Test
     public void testUpdateFilm() {
 
@@ -249,28 +762,623 @@ public class FilmoRateApplicationTests {
     @Test
     public void testGetTopFilms() {
         List<Film> fList = new ArrayList<>();
+        // id берутся из ответов: откатанные транзакции других тестов сдвигают последовательности
+        List<Long> filmIds = new ArrayList<>(List.of(1L, 2L));
+        List<Long> userIds = new ArrayList<>(List.of(1L, 2L));
 
         for (int i = 3; i < 16; i++) {
             Film film = buildFilm("name" + i);
             User user = buildUser("name" + i);
-            filmDbStorage.createFilm(film);
-            userStorage.createUser(user);
+            filmIds.add(filmDbStorage.createFilm(film));
+            userIds.add(userStorage.createUser(user));
         }
 
         for (int i = 10; i > 0; i--) {
             for (int j = 1; j < i + 1; j++) {
-                filmDbStorage.addUserLike(i, j);
+                filmDbStorage.addUserLike(filmIds.get(i - 1), userIds.get(j - 1));
             }
         }
 
         for (int i = 10; i > 0; i--) {
-            Optional<Film> optionalFilm = filmDbStorage.getFilmById(i);
+            Optional<Film> optionalFilm = filmDbStorage.getFilmById(filmIds.get(i - 1));
             optionalFilm.ifPresent(fList::add);
         }
 
         assertThat(filmDbStorage.getTopFilms(10)).containsExactlyElementsOf(fList);
     }
 
+    @Test
+    public void testGetTopFilmsIncludesFilmsWithoutLikes() {
+        filmDbStorage.checkLeaderboardConsistency();
+
+        Collection<Film> topFilms = filmDbStorage.getTopFilms(Integer.MAX_VALUE);
+
+        assertThat(topFilms).hasSize(filmDbStorage.getFilmsCount());
+        assertThat(topFilms).extracting(Film::getId).contains(1L, 2L);
+    }
+
+    @Test
+    public void testInMemoryGetTopFilmsOrdersByLikesThenId() {
+        InMemoryFilmStorage inMemoryFilmStorage = new InMemoryFilmStorage();
+        for (int i = 1; i <= 4; i++) {
+            inMemoryFilmStorage.createFilm(buildFilm("name" + i));
+        }
+        inMemoryFilmStorage.addUserLike(3, 1);
+        inMemoryFilmStorage.addUserLike(3, 2);
+        inMemoryFilmStorage.addUserLike(4, 1);
+
+        assertThat(inMemoryFilmStorage.getTopFilms(3)).extracting(Film::getId).containsExactly(3L, 4L, 1L);
+    }
+
+    @Test
+    public void testFilmRecommendations() {
+        long[] userIds = new long[3];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = userStorage.createUser(buildUser("recommend" + i));
+        }
+        List<Long> filmIds = filmDbStorage.createFilms(List.of(buildFilm("r1"), buildFilm("r2"), buildFilm("r3"),
+                buildFilm("r4")));
+        // первый пользователь лайкнул фильмы 1 и 2, второй - 1, 2 и 3, третий - 1 и 4
+        jdbcTemplate.batchUpdate("INSERT INTO films_likes(film_id, user_id) VALUES (?, ?)", List.of(
+                new Object[]{filmIds.get(0), userIds[0]}, new Object[]{filmIds.get(1), userIds[0]},
+                new Object[]{filmIds.get(0), userIds[1]}, new Object[]{filmIds.get(1), userIds[1]},
+                new Object[]{filmIds.get(2), userIds[1]},
+                new Object[]{filmIds.get(0), userIds[2]}, new Object[]{filmIds.get(3), userIds[2]}));
+        filmRecommender.warmUp();
+
+        assertThat(filmRecommender.getRecommendedFilmIds(userIds[0], 10, 1000))
+                .containsExactly(filmIds.get(2), filmIds.get(3));
+        assertThat(filmRecommender.getRecommendedFilmIds(userIds[0], 1, 1000)).containsExactly(filmIds.get(2));
+        assertThat(filmRecommender.getRecommendedFilmIds(userIds[2], 10, 1000)).containsExactly(filmIds.get(1),
+                filmIds.get(2));
+
+        filmRecommender.addLike(filmIds.get(2), userIds[0]);
+        assertThat(filmRecommender.getRecommendedFilmIds(userIds[0], 10, 1000)).containsExactly(filmIds.get(3));
+        filmRecommender.removeLike(filmIds.get(0), userIds[2]);
+        assertThat(filmRecommender.getRecommendedFilmIds(userIds[0], 10, 1000)).isEmpty();
+        assertThat(filmDbStorage.getFilmsByIds(filmIds.subList(2, 4))).extracting(Film::getName)
+                .containsExactly("r3", "r4");
+
+        // id за пределами int получают плотные индексы
+        long bigUserId = Integer.MAX_VALUE + 1L;
+        long bigFilmId = Integer.MAX_VALUE + 2L;
+        filmRecommender.addLike(filmIds.get(1), bigUserId);
+        filmRecommender.addLike(bigFilmId, bigUserId);
+        assertThat(filmRecommender.getRecommendedFilmIds(userIds[0], 10, 1000)).containsExactly(bigFilmId);
+        assertThat(filmRecommender.getRecommendedFilmIds(bigUserId, 10, 1000)).containsExactly(filmIds.get(0),
+                filmIds.get(2));
+        filmRecommender.removeLike(bigFilmId, bigUserId);
+        assertThat(filmRecommender.getRecommendedFilmIds(userIds[0], 10, 1000)).isEmpty();
+    }
+
+    @Test
+    public void testIntBitmap() {
+        IntBitmap bitmap = new IntBitmap();
+        Set<Integer> expected = new TreeSet<>();
+        Random random = new Random(1);
+        // плотный блок переходит в битовую карту, разреженные остаются массивами
+        for (int i = 0; i < 10_000; i++) {
+            int value = random.nextBoolean() ? random.nextInt(8_000) : random.nextInt(Integer.MAX_VALUE);
+            assertThat(bitmap.add(value)).isEqualTo(expected.add(value));
+        }
+        assertThat(bitmap.cardinality()).isEqualTo(expected.size());
+        assertThat(bitmap.toArray()).containsExactly(expected.stream().mapToInt(Integer::intValue).toArray());
+
+        IntBitmap excluded = new IntBitmap();
+        for (int value = 0; value < 8_000; value += 2) {
+            excluded.add(value);
+        }
+        List<Integer> andNot = new ArrayList<>();
+        bitmap.forEachAndNotWhile(excluded, value -> andNot.add(value));
+        assertThat(andNot).containsExactlyElementsOf(expected.stream().filter(value -> !excluded.contains(value))
+                .toList());
+
+        // удаление возвращает блок к массиву и убирает пустые блоки
+        for (int value : expected) {
+            assertThat(bitmap.remove(value)).isTrue();
+            assertThat(bitmap.contains(value)).isFalse();
+        }
+        assertThat(bitmap.isEmpty()).isTrue();
+        assertThat(bitmap.remove(1)).isFalse();
+    }
+
+    @Test
+    public void testInMemoryFilmStorageConcurrentLikes() throws Exception {
+        final int threads = 8;
+        final int filmsCount = 16;
+        final int usersPerThread = 100;
+        InMemoryFilmStorage inMemoryFilmStorage = new InMemoryFilmStorage();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier start = new CyclicBarrier(threads);
+        List<Future<?>> tasks = new ArrayList<>();
+
+        // каждый поток ставит лайки всем фильмам от своих пользователей, затем снимает лайки нечётных,
+        // попутно читая фильмы и топ
+        for (int t = 0; t < threads; t++) {
+            long firstUserId = (long) t * usersPerThread + 1;
+            tasks.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < filmsCount / threads; i++) {
+                    inMemoryFilmStorage.createFilm(buildFilm("concurrent"));
+                }
+                for (long userId = firstUserId; userId < firstUserId + usersPerThread; userId++) {
+                    for (long filmId = 1; filmId <= filmsCount; filmId++) {
+                        while (inMemoryFilmStorage.addUserLike(filmId, userId) == 0) {
+                            Thread.onSpinWait(); // фильм ещё создаётся другим потоком
+                        }
+                    }
+                    inMemoryFilmStorage.getTopFilms(5);
+                }
+                for (long userId = firstUserId + 1; userId < firstUserId + usersPerThread; userId += 2) {
+                    for (long filmId = 1; filmId <= filmsCount; filmId++) {
+                        assertThat(inMemoryFilmStorage.deleteUserLike(filmId, userId)).isTrue();
+                    }
+                    inMemoryFilmStorage.getFilmById(userId % filmsCount + 1);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertThat(inMemoryFilmStorage.getFilmsCount()).isEqualTo(filmsCount);
+        assertThat(inMemoryFilmStorage.getFilms()).allSatisfy(film -> {
+            assertThat(film.getUsersLikes()).hasSize(threads * usersPerThread / 2);
+            assertThat(film.getUsersLikes()).allMatch(userId -> userId % 2 == 1);
+        });
+        assertThat(inMemoryFilmStorage.getTopFilms(filmsCount)).extracting(Film::getId)
+                .containsExactlyElementsOf(LongStream.rangeClosed(1, filmsCount).boxed().toList());
+    }
+
+    @Test
+    public void testInMemoryUserStorageConcurrentFriends() throws Exception {
+        final int threads = 8;
+        final int usersCount = 200;
+        InMemoryUserStorage inMemoryUserStorage = new InMemoryUserStorage();
+        for (int i = 0; i < usersCount; i++) {
+            inMemoryUserStorage.createUser(buildUser("concurrent" + i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier start = new CyclicBarrier(threads);
+        List<Future<?>> tasks = new ArrayList<>();
+
+        // все потоки конкурируют за одних и тех же пользователей: поток t добавляет в друзья
+        // каждого t-го пользователя и удаляет тех, кого добавил при чётном t
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            tasks.add(executor.submit(() -> {
+                start.await();
+                for (long userId = 1; userId <= usersCount; userId++) {
+                    for (long friendId = thread + 1; friendId <= usersCount; friendId += threads) {
+                        assertThat(inMemoryUserStorage.addFriend(userId, friendId)).isTrue();
+                    }
+                    inMemoryUserStorage.getUserFriends(userId);
+                }
+                if (thread % 2 == 0) {
+                    for (long userId = 1; userId <= usersCount; userId++) {
+                        for (long friendId = thread + 1; friendId <= usersCount; friendId += threads) {
+                            assertThat(inMemoryUserStorage.deleteFriend(userId, friendId)).isTrue();
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertThat(inMemoryUserStorage.getUsers()).hasSize(usersCount).allSatisfy(user -> {
+            assertThat(user.getFriends()).hasSize(usersCount / 2);
+            assertThat(user.getFriends()).allMatch(friendId -> (friendId - 1) % threads % 2 == 1);
+        });
+        assertThat(inMemoryUserStorage.getUsersPage(10, 5)).extracting(User::getId)
+                .containsExactly(11L, 12L, 13L, 14L, 15L);
+    }
+
+    @Test
+    public void testLeaderboardConsistencyCheck() {
+        jdbcTemplate.update("INSERT INTO films_likes(film_id, user_id) VALUES (?, ?)", 2, 2);
+
+        assertThat(filmDbStorage.checkLeaderboardConsistency()).isPositive();
+        assertThat(filmDbStorage.checkLeaderboardConsistency()).isZero();
+        assertThat(filmDbStorage.getTopFilms(10)).extracting(Film::getId).contains(2L);
+    }
+
+    // вне транзакции теста: фильмы создаются в собственной транзакции, которая откатывается
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testCreateFilmsRollbackSkipsLeaderboard() {
+        filmDbStorage.checkLeaderboardConsistency();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        List<Long> filmIds = transaction.execute(status -> {
+            status.setRollbackOnly();
+            return filmDbStorage.createFilms(List.of(buildFilm("rollback1"), buildFilm("rollback2")));
+        });
+
+        assertThat(filmDbStorage.getTopFilms(1000)).extracting(Film::getId).doesNotContainAnyElementsOf(filmIds);
+        assertThat(filmDbStorage.checkLeaderboardConsistency()).isZero();
+    }
+
+    @Test
+    public void testLeaderboardConcurrentCounters() throws Exception {
+        final int threads = 16;
+        final int likesPerThread = 1000;
+        FilmLeaderboard leaderboard = new FilmLeaderboard();
+        leaderboard.load(Map.of(1L, 0L, 2L, 5L, 3L, 5L));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier start = new CyclicBarrier(threads);
+        List<Future<?>> tasks = new ArrayList<>();
+
+        // все потоки лайкают один фильм, попутно снимая и возвращая лайк другого и читая топ
+        for (int t = 0; t < threads; t++) {
+            tasks.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < likesPerThread; i++) {
+                    leaderboard.increment(1);
+                    leaderboard.decrement(2);
+                    leaderboard.increment(2);
+                    if (i % 100 == 0) {
+                        leaderboard.getTopFilmIds(2);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get(1, TimeUnit.MINUTES);
+        }
+
+        assertThat(leaderboard.getLikesCount(1)).isEqualTo(threads * likesPerThread);
+        assertThat(leaderboard.getLikesCounts()).containsEntry(2L, 5L).containsEntry(3L, 5L);
+        assertThat(leaderboard.getTopFilmIds(3)).containsExactly(1L, 2L, 3L);
+
+        // одновременные установки не складывают поправки, лайки во время установки не теряются
+        tasks.clear();
+        for (int t = 0; t < threads; t++) {
+            final boolean setter = t % 2 == 0;
+            tasks.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < likesPerThread; i++) {
+                    if (setter) {
+                        leaderboard.setLikesCount(3, 7);
+                    } else {
+                        leaderboard.increment(2);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertThat(leaderboard.getLikesCount(3)).isEqualTo(7);
+        assertThat(leaderboard.getLikesCount(2)).isEqualTo(5 + threads / 2 * likesPerThread);
+
+        leaderboard.setLikesCount(1, 1);
+        leaderboard.remove(2);
+        assertThat(leaderboard.getTopFilmIds(3)).containsExactly(3L, 1L);
+    }
+
+    @Test
+    public void testStoredLikesCountSyncAndVerify() {
+        long filmId = filmDbStorage.createFilm(buildFilm("like count"));
+        long userId = userStorage.createUser(buildUser("like count"));
+        String storedLikes = "SELECT like_count FROM films WHERE film_id=?";
+
+        filmDbStorage.addUserLike(filmId, userId);
+        assertThat(jdbcTemplate.queryForObject(storedLikes, Long.class, filmId)).isZero();
+        filmDbStorage.syncLikesCounts();
+        assertThat(jdbcTemplate.queryForObject(storedLikes, Long.class, filmId)).isEqualTo(1);
+
+        // лайк в обход хранилища: сверка исправляет и счётчик в памяти, и столбец
+        jdbcTemplate.update("DELETE FROM films_likes WHERE film_id=?", filmId);
+        filmDbStorage.verifyLikesCounts();
+        assertThat(filmDbStorage.getFilmById(filmId, false)).hasValueSatisfying(
+                film -> assertThat(film.getLikesCount()).isZero());
+        assertThat(jdbcTemplate.queryForObject(storedLikes, Long.class, filmId)).isZero();
+        assertThat(filmDbStorage.checkLeaderboardConsistency()).isZero();
+    }
+
+    @Test
+    public void testConnectionLimitingDataSource() throws Exception {
+        ConnectionLimitingDataSource dataSource =
+                new ConnectionLimitingDataSource(jdbcTemplate.getDataSource(), 2, 100);
+
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        assertThat(dataSource.getActiveCount()).isEqualTo(2);
+        assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+
+        // повторное закрытие не возвращает разрешение дважды
+        first.close();
+        first.close();
+        assertThat(dataSource.getActiveCount()).isEqualTo(1);
+        second.close();
+
+        // сотня виртуальных потоков делит два соединения
+        JdbcTemplate limited = new JdbcTemplate(new ConnectionLimitingDataSource(jdbcTemplate.getDataSource(), 2,
+                TimeUnit.SECONDS.toMillis(30)));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                tasks.add(executor.submit(() -> limited.queryForObject("SELECT COUNT(*) FROM genres", Integer.class)));
+            }
+            for (Future<Integer> task : tasks) {
+                assertThat(task.get(1, TimeUnit.MINUTES)).isPositive();
+            }
+        }
+    }
+
+    @Test
+    public void testConnectionPoolHealthIndicator() throws Exception {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setDataSource(jdbcTemplate.getDataSource());
+        pool.setPoolName("health");
+        pool.setMaximumPoolSize(1);
+        pool.setConnectionTimeout(TimeUnit.SECONDS.toMillis(30));
+        ConnectionLimitingDataSource limiter = new ConnectionLimitingDataSource(pool, 2, 100);
+        ConnectionPoolHealthIndicator indicator = new ConnectionPoolHealthIndicator(limiter, 0);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        indicator.bindTo(registry);
+
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.UNKNOWN);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Connection held = limiter.getConnection()) {
+            assertThat(indicator.health().getStatus()).isEqualTo(Status.UP);
+            assertThat(indicator.health().getDetails()).containsEntry("active", 1).containsEntry("maximum", 1);
+
+            // второй поток ждёт соединения в пуле: пул исчерпан
+            Future<Boolean> waiting = executor.submit(() -> {
+                try (Connection connection = limiter.getConnection()) {
+                    return connection.isValid(1);
+                }
+            });
+            while (pool.getHikariPoolMXBean().getThreadsAwaitingConnection() == 0) {
+                Thread.sleep(10);
+            }
+            assertThat(indicator.health().getStatus()).isEqualTo(Status.DOWN);
+            held.close();
+            assertThat(waiting.get(1, TimeUnit.MINUTES)).isTrue();
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.UP);
+        assertThat(registry.get("filmorate.connection.limiter.wait").functionTimer().count()).isEqualTo(2);
+        assertThat(registry.get("filmorate.connection.limiter.active").gauge().value()).isZero();
+        pool.close();
+    }
+
+    @Test
+    public void testQueryStats() throws Exception {
+        QueryStats queryStats = new QueryStats(2);
+        ProxyFactory proxyFactory = new ProxyFactory(new FilmRepository(jdbcTemplate,
+                new FilmRowMapper(), new MpaRateRowMapper(), new GenreRowMapper(), new FilmResultSetExtractor()));
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvisor(new QueryStatsAdvisor(queryStats));
+        FilmRepository repository = (FilmRepository) proxyFactory.getProxy();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        queryStats.bindTo(registry);
+
+        assertThat(repository.getHydratedFilmById(1)).isPresent();
+        assertThat(repository.getHydratedFilmById(Long.MAX_VALUE)).isEmpty();
+        assertThatThrownBy(() -> repository.getFilmGenresByFilmIds(null)).isInstanceOf(RuntimeException.class);
+
+        assertThat(queryStats.getQuery("film.getHydratedFilmById")).hasValueSatisfying(query -> {
+            assertThat(query.getCalls()).isEqualTo(2);
+            assertThat(query.getRows()).isEqualTo(1);
+            assertThat(LongStream.of(query.getHistogram()).sum()).isEqualTo(2);
+            assertThat(query.getPercentileMicros(0.99)).isPositive();
+        });
+        assertThat(queryStats.getQuery("film.getFilmGenresByFilmIds")).hasValueSatisfying(
+                query -> assertThat(query.getErrors()).isEqualTo(1));
+        assertThat(registry.get("filmorate.query").tag("query", "film.getHydratedFilmById").functionTimer().count())
+                .isEqualTo(2);
+
+        // три запроса к базе за HTTP-запрос при пороге 2 - подозрение на N+1
+        new RequestQueriesFilter(queryStats).doFilter(new MockHttpServletRequest("GET", "/films/1"),
+                new MockHttpServletResponse(), (request, response) -> {
+                    request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/films/{filmId}");
+                    for (int i = 0; i < 3; i++) {
+                        repository.isFilmExist(1);
+                    }
+                });
+        // запросы без обработчика не заводят ключ на каждый URI
+        for (String uri : List.of("/films/1/x", "/films/2/y")) {
+            new RequestQueriesFilter(queryStats).doFilter(new MockHttpServletRequest("GET", uri),
+                    new MockHttpServletResponse(), (request, response) -> {
+                        for (int i = 0; i < 3; i++) {
+                            repository.isFilmExist(1);
+                        }
+                    });
+        }
+        QueryStatsEndpoint endpoint = new QueryStatsEndpoint(queryStats);
+        assertThat(endpoint.queries().suspectedNPlusOne())
+                .extracting(QueryStatsEndpoint.SuspectReport::endpoint, QueryStatsEndpoint.SuspectReport::maxQueries,
+                        QueryStatsEndpoint.SuspectReport::topQuery)
+                .containsExactlyInAnyOrder(tuple("GET /films/{filmId}", 3L, "film.isFilmExist"),
+                        tuple("UNMAPPED", 3L, "film.isFilmExist"));
+        assertThat(endpoint.queries().queries()).extracting(QueryStatsEndpoint.QueryReport::name)
+                .containsExactlyInAnyOrder("film.getHydratedFilmById", "film.getFilmGenresByFilmIds", "film.isFilmExist");
+        assertThat(endpoint.query("film.isFilmExist").histogram().values().stream().mapToLong(Long::longValue).sum())
+                .isEqualTo(9);
+
+        endpoint.reset();
+        assertThat(endpoint.queries().queries()).isEmpty();
+        assertThat(endpoint.queries().suspectedNPlusOne()).isEmpty();
+    }
+
+    @Test
+    public void testRepositoryQueryPlans() {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScripts("schema.sql", "data.sql")
+                .build();
+        try {
+            JdbcTemplate jdbc = new JdbcTemplate(database);
+            jdbc.update("INSERT INTO films(name, description, release_date, duration, mpa_rate) "
+                    + "SELECT 'film ' || x, 'description', DATE '2000-01-01', 120, 1 + MOD(x, 5) "
+                    + "FROM SYSTEM_RANGE(1, 2000)");
+            jdbc.update("INSERT INTO users(name, email, login, birthday) "
+                    + "SELECT 'user ' || x, 'user' || x || '@mail.ru', 'user' || x, DATE '1990-01-01' "
+                    + "FROM SYSTEM_RANGE(1, 2000)");
+            jdbc.update("INSERT INTO films_likes(film_id, user_id) "
+                    + "SELECT f.x, u.x FROM SYSTEM_RANGE(1, 2000) f JOIN SYSTEM_RANGE(1, 9) u ON u.x <= MOD(f.x, 10)");
+            jdbc.update("INSERT INTO users_friends(user_id, friend_id) "
+                    + "SELECT u.x, 1 + MOD(u.x + k.x, 2000) FROM SYSTEM_RANGE(1, 2000) u JOIN SYSTEM_RANGE(1, 5) k ON TRUE");
+            jdbc.update("INSERT INTO films_genres(film_id, genre_id) SELECT x, 1 + MOD(x, 6) FROM SYSTEM_RANGE(1, 2000)");
+
+            FilmRepository films = new FilmRepository(jdbc,
+                    new FilmRowMapper(), new MpaRateRowMapper(), new GenreRowMapper(), new FilmResultSetExtractor());
+            UserRepository users = new UserRepository(jdbc, new UserRowMapper());
+            User user = buildUser("plan");
+            user.setId(1L);
+            Film film = buildFilm("plan");
+            film.setId(1);
+
+            // чтение таблицы целиком - по назначению: прогрев кэшей, выгрузка, полные списки
+            Map<String, Runnable> fullReads = new LinkedHashMap<>();
+            fullReads.put("film.getAllFilms", films::getAllFilms);
+            fullReads.put("film.forEachLike", () -> films.forEachLike(100, (filmId, userId) -> {
+            }));
+            fullReads.put("film.getFilmLikesCounts", films::getFilmLikesCounts);
+            fullReads.put("film.getStoredLikesCounts", films::getStoredLikesCounts);
+            fullReads.put("user.getAllUsers", users::getAllUsers);
+            fullReads.put("user.forEachFriendship", () -> users.forEachFriendship((userId, friendId) -> {
+            }));
+
+            Map<String, Runnable> lookups = new LinkedHashMap<>();
+            lookups.put("film.createFilm", () -> films.createFilm(buildFilm("plan")));
+            lookups.put("film.createFilms", () -> films.createFilms(List.of(buildFilm("plan"))));
+            lookups.put("film.updateFilm", () -> films.updateFilm(film));
+            lookups.put("film.getFilmsCount", films::getFilmsCount);
+            lookups.put("film.getFilmById", () -> films.getFilmById(1));
+            lookups.put("film.isFilmExist", () -> films.isFilmExist(1));
+            lookups.put("film.isFilmUserLikeExist", () -> films.isFilmUserLikeExist(1, 1));
+            lookups.put("film.getHydratedFilmById", () -> films.getHydratedFilmById(1));
+            lookups.put("film.getHydratedFilmsPage", () -> films.getHydratedFilmsPage(100, 10));
+            lookups.put("film.getFilmsByIds", () -> films.getFilmsByIds(List.of(1L, 2L)));
+            lookups.put("film.getMpaRateById", () -> films.getMpaRateById(1));
+            lookups.put("film.getMpaRates", films::getMpaRates);
+            lookups.put("film.getGenreById", () -> films.getGenreById(1));
+            lookups.put("film.getGenres", films::getGenres);
+            lookups.put("film.addFilmGenres", () -> films.addFilmGenres(1L, List.of(new Genre(1, "Комедия"))));
+            lookups.put("film.addFilmsGenres", () -> films.addFilmsGenres(Map.of(2L, List.of(new Genre(1, "Комедия")))));
+            lookups.put("film.getFilmGenres", () -> films.getFilmGenres(1L));
+            lookups.put("film.getFilmGenresByFilmIds", () -> {
+                films.getFilmGenresByFilmIds(List.of(1L, 2L));
+                films.getFilmGenresByFilmIds(List.of(1L, 900L));
+            });
+            lookups.put("film.addFilmUserLikes", () -> films.addFilmUserLikes(1L, 2000L));
+            lookups.put("film.applyFilmUserLikes", () -> films.applyFilmUserLikes(List.<long[]>of(new long[]{2, 1999}),
+                    List.<long[]>of(new long[]{2, 1}), (filmId, userId, delta) -> {
+                    }));
+            lookups.put("film.deleteUserLike", () -> films.deleteUserLike(3, 1));
+            lookups.put("film.getFilmUserLikes", () -> films.getFilmUserLikes(9));
+            lookups.put("film.getFilmLikesCount", () -> films.getFilmLikesCount(9));
+            lookups.put("film.getFilmLikesByFilmIds", () -> {
+                films.getFilmLikesByFilmIds(List.of(8L, 9L));
+                films.getFilmLikesByFilmIds(List.of(1L, 900L));
+            });
+            lookups.put("film.updateStoredLikesCounts", () -> films.updateStoredLikesCounts(Map.of(9L, 9L)));
+            lookups.put("user.createUser", () -> users.createUser(buildUser("plan")));
+            lookups.put("user.updateUser", () -> users.updateUser(user));
+            lookups.put("user.isUserExist", () -> users.isUserExist(1));
+            lookups.put("user.getUserById", () -> users.getUserById(1));
+            lookups.put("user.getUsersPage", () -> users.getUsersPage(100, 10));
+            lookups.put("user.getUsersByIds", () -> users.getUsersByIds(List.of(1L, 2L)));
+            lookups.put("user.addFriend", () -> users.addFriend(1, 100));
+            lookups.put("user.deleteFriend", () -> users.deleteFriend(1, 3));
+            lookups.put("user.getUserFriends", () -> users.getUserFriends(1));
+            lookups.put("user.getCommonFriends", () -> users.getCommonFriends(1, 2));
+            lookups.put("user.getUserFriendIds", () -> users.getUserFriendIds(1));
+            lookups.put("user.getFriendIdsByUserIds", () -> users.getFriendIdsByUserIds(List.of(1L, 2L)));
+
+            // новый метод репозитория должен попасть в одну из групп, иначе его запросы не проверяются
+            List<String> repositoryMethods = new ArrayList<>();
+            repositoryMethods.addAll(publicMethodNames("film.", FilmRepository.class));
+            repositoryMethods.addAll(publicMethodNames("user.", UserRepository.class));
+            Set<String> checked = new HashSet<>(lookups.keySet());
+            checked.addAll(fullReads.keySet());
+            assertThat(checked).containsExactlyInAnyOrderElementsOf(repositoryMethods);
+
+            fullReads.values().forEach(Runnable::run);
+            List<String> fullScans = new ArrayList<>();
+            lookups.forEach((name, lookup) -> {
+                List<String> statements = recordStatements(jdbc, lookup);
+                assertThat(statements).as(name).isNotEmpty();
+                statements.forEach(sql -> scannedTables(jdbc, sql, 1000)
+                        .forEach(table -> fullScans.add(name + " scans " + table + ": " + sql)));
+            });
+            assertThat(fullScans).isEmpty();
+        } finally {
+            database.shutdown();
+        }
+    }
+
+    @Test
+    public void testPageCursorRequiresLimit() throws Exception {
+        // сервисы не нужны: запрос с курсором без limit отклоняется до обращения к ним
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new FilmController(null, null), new UserController(null))
+                .setControllerAdvice(new ErrorHandler())
+                .build();
+
+        for (String uri : List.of("/films?after=5", "/users?after=5")) {
+            mockMvc.perform(get(uri))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.description").value("Page limit is required with the after cursor"));
+        }
+    }
+
+    @Test
+    public void testSampledHttpLogStrategy() throws Exception {
+        SampledHttpLogStrategy strategy = new SampledHttpLogStrategy(1.0,
+                new String[]{"/films=0.5", "/films/popular=0", "/actuator=0"}, 400);
+        assertThat(strategy.getSampleRate("/films/popular")).isEqualTo(0);
+        assertThat(strategy.getSampleRate("/films/1")).isEqualTo(0.5);
+        assertThat(strategy.getSampleRate("/filmsx")).isEqualTo(1.0);
+        assertThat(strategy.getSampleRate("/users/1")).isEqualTo(1.0);
+        assertThatThrownBy(() -> new SampledHttpLogStrategy(1.0, new String[]{"/films"}, 400))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        List<String> written = new ArrayList<>();
+        Sink sink = new Sink() {
+            @Override
+            public void write(Precorrelation precorrelation, org.zalando.logbook.HttpRequest request) {
+            }
+
+            @Override
+            public void write(Correlation correlation, org.zalando.logbook.HttpRequest request,
+                              org.zalando.logbook.HttpResponse response) {
+            }
+
+            @Override
+            public void writeBoth(Correlation correlation, org.zalando.logbook.HttpRequest request,
+                                  org.zalando.logbook.HttpResponse response) throws IOException {
+                written.add(request.getPath() + " " + response.getStatus() + " "
+                        + request.getBodyAsString() + "|" + response.getBodyAsString());
+            }
+        };
+        LogbookFilter filter = new LogbookFilter(Logbook.builder().strategy(strategy).sink(sink).build());
+
+        logExchange(filter, "/users", 201);
+        logExchange(filter, "/films/popular", 200);
+        logExchange(filter, "/films/popular", 404);
+        logExchange(filter, "/actuator/health", 503);
+
+        // вне выборки пишутся только ошибки и без тел
+        assertThat(written).containsExactly(
+                "/users 201 request|response",
+                "/films/popular 404 |",
+                "/actuator/health 503 |");
+    }
 
     @Test
     public void testGetMpaRateById() {
@@ -297,6 +1405,29 @@ public class FilmoRateApplicationTests {
                 genre -> assertThat(genre).hasFieldOrPropertyWithValue("name", "Комедия"));
     }
 
+    @Test
+    public void testReferenceDataCacheRefreshAndMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        referenceDataCache.bindTo(registry);
+        double missesBefore = genreRequests(registry, "miss");
+        double hitsBefore = genreRequests(registry, "hit");
+
+        assertThat(filmDbStorage.getGenreById(100)).isEmpty();
+        jdbcTemplate.update("INSERT INTO genres(genre_id, name) VALUES (?, ?)", 100, "Вестерн");
+        referenceDataCache.refresh();
+        assertThat(filmDbStorage.getGenreById(100)).hasValueSatisfying(
+                genre -> assertThat(genre.getName()).isEqualTo("Вестерн"));
+        assertThat(filmDbStorage.getGenreById(100)).isSameAs(filmDbStorage.getGenreById(100));
+
+        jdbcTemplate.update("DELETE FROM genres WHERE genre_id=?", 100);
+        referenceDataCache.refresh();
+
+        assertThat(genreRequests(registry, "miss") - missesBefore).isEqualTo(1);
+        assertThat(genreRequests(registry, "hit") - hitsBefore).isEqualTo(3);
+        assertThat(registry.get("filmorate.reference.cache.size")
+                .tags("cache", "mpa").gauge().value()).isEqualTo(5);
+    }
+
     @Test
     public void testGetGenres() {
         Collection<Genre> gList = List.of(
@@ -312,6 +1443,91 @@ public class FilmoRateApplicationTests {
     }
 
 
+    private double genreRequests(SimpleMeterRegistry registry, String result) {
+        return registry.get("filmorate.reference.cache.requests")
+                .tags("cache", "genres", "result", result)
+                .functionCounter()
+                .count();
+    }
+
+    private static List<String> publicMethodNames(String prefix, Class<?> type) {
+        return Arrays.stream(type.getDeclaredMethods())
+                .filter(method -> Modifier.isPublic(method.getModifiers()))
+                .map(method -> prefix + method.getName())
+                .toList();
+    }
+
+    // SQL, выполненные базой за время action, по статистике запросов H2
+    private static List<String> recordStatements(JdbcTemplate jdbc, Runnable action) {
+        jdbc.execute("SET QUERY_STATISTICS TRUE");
+        try {
+            action.run();
+            return jdbc.queryForList("SELECT SQL_STATEMENT FROM INFORMATION_SCHEMA.QUERY_STATISTICS", String.class)
+                    .stream()
+                    // служебные запросы драйвера (CALL DATABASE() и т.п.) и сам запрос статистики не проверяются
+                    .filter(sql -> sql.matches("(?is)\\s*(SELECT|INSERT|UPDATE|DELETE)\\b.*"))
+                    .filter(sql -> !sql.contains("INFORMATION_SCHEMA.QUERY_STATISTICS"))
+                    .toList();
+        } finally {
+            // при выключении статистика очищается
+            jdbc.execute("SET QUERY_STATISTICS FALSE");
+        }
+    }
+
+    /**
+     * @return таблицы больше minRows строк, которые план запроса читает целиком:
+     * tableScan или обход индекса без условия
+     */
+    private static Set<String> scannedTables(JdbcTemplate jdbc, String sql, long minRows) {
+        String plan = jdbc.execute((Connection connection) -> {
+            try (PreparedStatement stmt = connection.prepareStatement("EXPLAIN " + sql)) {
+                for (int i = 1; i <= stmt.getParameterMetaData().getParameterCount(); i++) {
+                    stmt.setObject(i, 1);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    return rs.getString(1);
+                }
+            }
+        });
+        Map<String, String> tableByIndex = new HashMap<>();
+        jdbc.query("SELECT INDEX_NAME, TABLE_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_SCHEMA = 'PUBLIC'",
+                (RowCallbackHandler) rs -> tableByIndex.put(rs.getString(1), rs.getString(2)));
+
+        Set<String> tables = new TreeSet<>();
+        // COUNT(*) без условий H2 берёт из метаданных таблицы, не читая строки
+        if (plan.contains("/* direct lookup */")) {
+            return tables;
+        }
+        Matcher scan = Pattern.compile("/\\* PUBLIC\\.(\\w+)(\\.tableScan)? \\*/").matcher(plan);
+        while (scan.find()) {
+            String table = scan.group(2) != null ? scan.group(1) : tableByIndex.get(scan.group(1));
+            Long rows = jdbc.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+            if (rows != null && rows > minRows) {
+                tables.add(table);
+            }
+        }
+        return tables;
+    }
+
+    private static void logExchange(LogbookFilter filter, String path, int status) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setContent("request".getBytes());
+        filter.doFilter(request, new MockHttpServletResponse(), (servletRequest, servletResponse) -> {
+            servletRequest.getInputStream().readAllBytes();
+            ((HttpServletResponse) servletResponse).setStatus(status);
+            servletResponse.getOutputStream().write("response".getBytes());
+        });
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private User buildUser(String name) {
         return User.builder()
                 .name(name)
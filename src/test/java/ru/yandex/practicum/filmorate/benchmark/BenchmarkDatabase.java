@@ -0,0 +1,149 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.dal.FilmRepository;
+import ru.yandex.practicum.filmorate.dal.UserRepository;
+import ru.yandex.practicum.filmorate.mapper.film.FilmResultSetExtractor;
+import ru.yandex.practicum.filmorate.mapper.film.FilmRowMapper;
+import ru.yandex.practicum.filmorate.mapper.film.GenreRowMapper;
+import ru.yandex.practicum.filmorate.mapper.film.MpaRateRowMapper;
+import ru.yandex.practicum.filmorate.mapper.user.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeWriteBehind;
+import ru.yandex.practicum.filmorate.storage.film.ParallelLookups;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDataCache;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Встроенная H2 со схемой и справочниками приложения для бенчмарков.
+ * Соединения берутся из пула Hikari, как и в приложении.
+ */
+public class BenchmarkDatabase {
+
+    private static final int INSERT_CHUNK_SIZE = 10_000;
+
+    private final EmbeddedDatabase database;
+    private final HikariDataSource pool;
+    private final QueryCountingDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    public BenchmarkDatabase() {
+        this(0);
+    }
+
+    /**
+     * @param statementLatencyMicros задержка каждого запроса, см. {@link LatencyDataSource}
+     */
+    public BenchmarkDatabase(long statementLatencyMicros) {
+        database = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .setScriptEncoding("UTF-8")
+                .addScript("classpath:schema.sql")
+                .addScript("classpath:data.sql")
+                .build();
+        pool = new HikariDataSource();
+        pool.setDataSource(statementLatencyMicros > 0 ? new LatencyDataSource(database, statementLatencyMicros)
+                : database);
+        pool.setMaximumPoolSize(Runtime.getRuntime().availableProcessors() * 2);
+        dataSource = new QueryCountingDataSource(pool);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public long getStatementCount() {
+        return dataSource.getStatementCount();
+    }
+
+    public FilmRepository filmRepository() {
+        return new FilmRepository(jdbcTemplate, new FilmRowMapper(), new MpaRateRowMapper(), new GenreRowMapper(),
+                new FilmResultSetExtractor());
+    }
+
+    public FilmDbStorage filmDbStorage() {
+        FilmRepository filmRepository = filmRepository();
+        return filmDbStorage(filmRepository, new LikeWriteBehind(filmRepository, false, 0, 0, 0));
+    }
+
+    public FilmDbStorage filmDbStorage(FilmRepository filmRepository, LikeWriteBehind likeWriteBehind) {
+        return filmDbStorage(filmRepository, likeWriteBehind, new ParallelLookups(false, 0, 0));
+    }
+
+    public FilmDbStorage filmDbStorage(FilmRepository filmRepository, LikeWriteBehind likeWriteBehind,
+                                       ParallelLookups parallelLookups) {
+        ReferenceDataCache referenceDataCache = new ReferenceDataCache(filmRepository);
+        referenceDataCache.refresh();
+
+        FilmDbStorage filmDbStorage = new FilmDbStorage(filmRepository, referenceDataCache, likeWriteBehind,
+                parallelLookups);
+        filmDbStorage.warmUpLeaderboard();
+        return filmDbStorage;
+    }
+
+    public UserRepository userRepository() {
+        return new UserRepository(jdbcTemplate, new UserRowMapper());
+    }
+
+    public void seedUsers(int count) {
+        Date birthday = Date.valueOf(LocalDate.of(1990, 1, 1));
+        insertRows("INSERT INTO users(name, email, login, birthday) VALUES (?, ?, ?, ?)", count,
+                i -> new Object[]{"user" + i, "user" + i + "@mail.ru", "login" + i, birthday});
+    }
+
+    public void seedFilms(int count) {
+        Date releaseDate = Date.valueOf(LocalDate.of(2000, 1, 1));
+        insertRows("INSERT INTO films(name, description, release_date, duration, mpa_rate) VALUES (?, ?, ?, ?, ?)",
+                count, i -> new Object[]{"film" + i, "description" + i, releaseDate, 90 + i % 60, 1 + i % 5});
+    }
+
+    public void seedFilmGenres(long filmId, int genresCount) {
+        insertRows("INSERT INTO films_genres(film_id, genre_id) VALUES (?, ?)", genresCount,
+                i -> new Object[]{filmId, i + 1});
+    }
+
+    public void seedFilmLikes(long filmId, int likesCount) {
+        insertRows("INSERT INTO films_likes(film_id, user_id) VALUES (?, ?)", likesCount,
+                i -> new Object[]{filmId, i + 1});
+    }
+
+    // друзья пользователя u - следующие friendsPerUser пользователей по кругу
+    public void seedFriendships(int usersCount, int friendsPerUser) {
+        insertRows("INSERT INTO users_friends(user_id, friend_id) VALUES (?, ?)", usersCount * friendsPerUser,
+                i -> {
+                    int userId = i / friendsPerUser + 1;
+                    int friendId = (userId + i % friendsPerUser) % usersCount + 1;
+                    return new Object[]{userId, friendId};
+                });
+    }
+
+    public void insertRows(String sql, int count, IntFunction<Object[]> row) {
+        List<Object[]> batch = new ArrayList<>(Math.min(count, INSERT_CHUNK_SIZE));
+        for (int i = 0; i < count; i++) {
+            batch.add(row.apply(i));
+            if (batch.size() == INSERT_CHUNK_SIZE) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, batch);
+        }
+    }
+
+    public void shutdown() {
+        pool.close();
+        database.shutdown();
+    }
+}
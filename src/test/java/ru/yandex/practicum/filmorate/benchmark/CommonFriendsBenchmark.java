@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.dal.UserRepository;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /users/{id}/friends/common/{otherId}: прежний путь (два полных списка друзей и фильтр
+ * через Set&lt;User&gt;) против SQL-пересечения по users_friends и пересечения отсортированных
+ * массивов в памяти. Половина друзей у двух пользователей общая.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class CommonFriendsBenchmark {
+
+    private static final long USER_ID = 1;
+    private static final long OTHER_USER_ID = 2;
+
+    @Param({"1000", "10000", "100000"})
+    private int friendsPerUser;
+
+    @Param({"legacy", "sql", "memory"})
+    private String engine;
+
+    private BenchmarkDatabase database;
+    private UserRepository userRepository;
+    private UserDbStorage dbStorage;
+    private InMemoryUserStorage memoryStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int usersCount = friendsPerUser + friendsPerUser / 2 + 2;
+        int otherFirstFriend = 3 + friendsPerUser / 2;
+
+        if (engine.equals("memory")) {
+            memoryStorage = new InMemoryUserStorage();
+            for (int i = 0; i < usersCount; i++) {
+                memoryStorage.createUser(User.builder()
+                        .email("user" + i + "@mail.ru")
+                        .login("login" + i)
+                        .name("user" + i)
+                        .birthday(LocalDate.of(1990, 1, 1))
+                        .build());
+            }
+            for (int i = 0; i < friendsPerUser; i++) {
+                memoryStorage.addFriend(USER_ID, 3 + i);
+                memoryStorage.addFriend(OTHER_USER_ID, otherFirstFriend + i);
+            }
+            return;
+        }
+
+        database = new BenchmarkDatabase();
+        database.seedUsers(usersCount);
+        database.insertRows("INSERT INTO users_friends(user_id, friend_id) VALUES (?, ?)", friendsPerUser * 2,
+                i -> i < friendsPerUser
+                        ? new Object[]{USER_ID, 3 + i}
+                        : new Object[]{OTHER_USER_ID, otherFirstFriend + i - friendsPerUser});
+        userRepository = database.userRepository();
+        dbStorage = new UserDbStorage(userRepository);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (database != null) {
+            database.shutdown();
+        }
+    }
+
+    @Benchmark
+    public Collection<User> commonFriends() {
+        return switch (engine) {
+            case "legacy" -> {
+                Set<User> userFriends = new HashSet<>(userRepository.getUserFriends(USER_ID));
+                Set<User> otherUserFriends = new HashSet<>(userRepository.getUserFriends(OTHER_USER_ID));
+                yield userFriends.stream()
+                        .filter(otherUserFriends::contains)
+                        .toList();
+            }
+            case "sql" -> dbStorage.getCommonFriends(USER_ID, OTHER_USER_ID);
+            case "memory" -> memoryStorage.getCommonFriends(USER_ID, OTHER_USER_ID);
+            default -> List.of();
+        };
+    }
+}
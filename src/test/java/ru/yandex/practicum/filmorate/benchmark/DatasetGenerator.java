@@ -0,0 +1,247 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Детерминированный синтетический каталог: пользователи, фильмы с жанрами, лайки и дружба.
+ * При одинаковых параметрах и seed получаются одни и те же строки.
+ * <p>
+ * Популярность фильмов и пользователей распределена по закону Ципфа: фильм на k-м месте
+ * по популярности получает лайки в k раз реже первого, так же выбираются друзья. Места перемешаны,
+ * поэтому популярность не связана с id. Число лайков и друзей пользователя - по Парето:
+ * большинство ставит немного лайков, единицы - сотни. Строки пишутся пакетами по {@value #BATCH_SIZE}.
+ */
+public class DatasetGenerator {
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final double ZIPF_EXPONENT = 1.0;
+    // при alpha = 2 среднее распределения Парето - удвоенный минимум
+    private static final double PARETO_ALPHA = 2.0;
+    private static final int MPA_RATES_COUNT = 5;
+    private static final int GENRES_COUNT = 6;
+
+    private final long seed;
+    private final int usersCount;
+    private final int filmsCount;
+    private final double averageLikesPerUser;
+    private final double averageFriendsPerUser;
+
+    public DatasetGenerator(long seed, int usersCount, int filmsCount,
+                            double averageLikesPerUser, double averageFriendsPerUser) {
+        this.seed = seed;
+        this.usersCount = usersCount;
+        this.filmsCount = filmsCount;
+        this.averageLikesPerUser = averageLikesPerUser;
+        this.averageFriendsPerUser = averageFriendsPerUser;
+    }
+
+    /**
+     * Заполняет пустые таблицы пользователей и фильмов; справочники MPA и жанров уже должны быть загружены.
+     */
+    public Dataset load(JdbcTemplate jdbcTemplate) {
+        Long existing = jdbcTemplate.queryForObject(
+                "SELECT (SELECT COUNT(*) FROM users) + (SELECT COUNT(*) FROM films)", Long.class);
+        if (existing != null && existing > 0) {
+            throw new IllegalStateException("Dataset must be loaded into empty users and films tables");
+        }
+        Random random = new Random(seed);
+
+        insertRows(jdbcTemplate, "INSERT INTO users(name, email, login, birthday) VALUES (?, ?, ?, ?)", rows -> {
+            for (int i = 1; i <= usersCount; i++) {
+                rows.accept(new Object[]{"User " + i, "user" + i + "@mail.ru", "user" + i,
+                        Date.valueOf(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(50 * 365)))});
+            }
+        });
+        insertRows(jdbcTemplate,
+                "INSERT INTO films(name, description, release_date, duration, mpa_rate) VALUES (?, ?, ?, ?, ?)",
+                rows -> {
+                    for (int i = 1; i <= filmsCount; i++) {
+                        rows.accept(new Object[]{"Film " + i, "Description ".repeat(1 + random.nextInt(15)).trim(),
+                                Date.valueOf(LocalDate.of(1930, 1, 1).plusDays(random.nextInt(95 * 365))),
+                                60 + random.nextInt(140), 1 + random.nextInt(MPA_RATES_COUNT)});
+                    }
+                });
+        // пакетная вставка в пустые таблицы даёт подряд идущие id
+        long firstUserId = jdbcTemplate.queryForObject("SELECT MIN(user_id) FROM users", Long.class);
+        long firstFilmId = jdbcTemplate.queryForObject("SELECT MIN(film_id) FROM films", Long.class);
+        Dataset dataset = new Dataset(firstUserId, usersCount, shuffledRanks(random, usersCount),
+                firstFilmId, filmsCount, shuffledRanks(random, filmsCount));
+
+        long genres = insertRows(jdbcTemplate, "INSERT INTO films_genres(film_id, genre_id) VALUES (?, ?)", rows -> {
+            for (int i = 0; i < filmsCount; i++) {
+                int genre = random.nextInt(GENRES_COUNT);
+                int genresCount = 1 + random.nextInt(3);
+                for (int j = 0; j < genresCount; j++) {
+                    rows.accept(new Object[]{firstFilmId + i, 1 + (genre + j) % GENRES_COUNT});
+                }
+            }
+        });
+        long likes = insertRows(jdbcTemplate, "INSERT INTO films_likes(film_id, user_id) VALUES (?, ?)", rows -> {
+            for (int i = 0; i < usersCount; i++) {
+                long userId = firstUserId + i;
+                int count = paretoCount(random, averageLikesPerUser, filmsCount / 2);
+                Set<Long> filmIds = new HashSet<>();
+                while (filmIds.size() < count) {
+                    filmIds.add(dataset.randomFilmId(random));
+                }
+                filmIds.forEach(filmId -> rows.accept(new Object[]{filmId, userId}));
+            }
+        });
+        long friendships = insertRows(jdbcTemplate,
+                "INSERT INTO users_friends(user_id, friend_id) VALUES (?, ?)", rows -> {
+                    for (int i = 0; i < usersCount; i++) {
+                        long userId = firstUserId + i;
+                        int count = paretoCount(random, averageFriendsPerUser, (usersCount - 1) / 2);
+                        Set<Long> friendIds = new HashSet<>();
+                        while (friendIds.size() < count) {
+                            long friendId = dataset.randomUserId(random);
+                            if (friendId != userId) {
+                                friendIds.add(friendId);
+                            }
+                        }
+                        friendIds.forEach(friendId -> rows.accept(new Object[]{userId, friendId}));
+                    }
+                });
+        jdbcTemplate.update("UPDATE films f SET like_count = "
+                + "(SELECT COUNT(*) FROM films_likes fl WHERE fl.film_id = f.film_id)");
+
+        dataset.likesCount = likes;
+        dataset.friendshipsCount = friendships;
+        dataset.genresCount = genres;
+        return dataset;
+    }
+
+    // целое по Парето со средним около average, не больше max
+    private static int paretoCount(Random random, double average, int max) {
+        double minimum = average * (PARETO_ALPHA - 1) / PARETO_ALPHA;
+        double value = minimum / Math.pow(1 - random.nextDouble(), 1 / PARETO_ALPHA);
+        return (int) Math.min(max, Math.round(value));
+    }
+
+    private static int[] shuffledRanks(Random random, int count) {
+        int[] ranks = new int[count];
+        for (int i = 0; i < count; i++) {
+            ranks[i] = i;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int rank = ranks[i];
+            ranks[i] = ranks[j];
+            ranks[j] = rank;
+        }
+        return ranks;
+    }
+
+    private static long insertRows(JdbcTemplate jdbcTemplate, String sql, Consumer<Consumer<Object[]>> generator) {
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        long[] inserted = {0};
+        generator.accept(row -> {
+            batch.add(row);
+            if (batch.size() == BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                inserted[0] += batch.size();
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, batch);
+            inserted[0] += batch.size();
+        }
+        return inserted[0];
+    }
+
+    /**
+     * Загруженный каталог: id пользователей и фильмов и выбор id с той же популярностью, что при генерации.
+     */
+    public static class Dataset {
+
+        private final long firstUserId;
+        private final int usersCount;
+        private final int[] userIndexByRank;
+        private final Zipf users;
+        private final long firstFilmId;
+        private final int filmsCount;
+        private final int[] filmIndexByRank;
+        private final Zipf films;
+        private long likesCount;
+        private long friendshipsCount;
+        private long genresCount;
+
+        private Dataset(long firstUserId, int usersCount, int[] userIndexByRank,
+                        long firstFilmId, int filmsCount, int[] filmIndexByRank) {
+            this.firstUserId = firstUserId;
+            this.usersCount = usersCount;
+            this.userIndexByRank = userIndexByRank;
+            this.users = new Zipf(usersCount, ZIPF_EXPONENT);
+            this.firstFilmId = firstFilmId;
+            this.filmsCount = filmsCount;
+            this.filmIndexByRank = filmIndexByRank;
+            this.films = new Zipf(filmsCount, ZIPF_EXPONENT);
+        }
+
+        public long randomUserId(Random random) {
+            return firstUserId + userIndexByRank[users.sample(random)];
+        }
+
+        public long randomFilmId(Random random) {
+            return firstFilmId + filmIndexByRank[films.sample(random)];
+        }
+
+        // любой пользователь с равной вероятностью, например для курсора страницы
+        public long uniformUserId(Random random) {
+            return firstUserId + random.nextInt(usersCount);
+        }
+
+        public long uniformFilmId(Random random) {
+            return firstFilmId + random.nextInt(filmsCount);
+        }
+
+        public int getUsersCount() {
+            return usersCount;
+        }
+
+        public int getFilmsCount() {
+            return filmsCount;
+        }
+
+        public long getLikesCount() {
+            return likesCount;
+        }
+
+        public long getFriendshipsCount() {
+            return friendshipsCount;
+        }
+
+        public long getGenresCount() {
+            return genresCount;
+        }
+    }
+
+    // выбор места от 0 до n - 1 с вероятностью 1 / (k + 1)^s: бинарный поиск по накопленным вероятностям
+    private static class Zipf {
+
+        private final double[] cumulative;
+
+        Zipf(int n, double exponent) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1 / Math.pow(k + 1, exponent);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < n; k++) {
+                cumulative[k] /= sum;
+            }
+        }
+
+        int sample(Random random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.dal.FilmRepository;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeWriteBehind;
+import ru.yandex.practicum.filmorate.storage.film.ParallelLookups;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /films/{id} и GET /films/popular без HTTP против базы с задержкой на каждый запрос:
+ * жанры и лайки читаются по очереди ("sequential") или одновременно ("parallel", {@link ParallelLookups}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilmAsyncHydrationBenchmark {
+
+    private static final long FILM_ID = 1;
+
+    @Param({"0", "1000"})
+    private long latencyMicros;
+
+    @Param({"sequential", "parallel"})
+    private String lookups;
+
+    private BenchmarkDatabase database;
+    private ParallelLookups parallelLookups;
+    private FilmDbStorage filmStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase(latencyMicros);
+        database.seedUsers(1000);
+        database.seedFilms(100);
+        database.seedFilmGenres(FILM_ID, 3);
+        database.seedFilmLikes(FILM_ID, 1000);
+
+        FilmRepository filmRepository = database.filmRepository();
+        parallelLookups = new ParallelLookups(lookups.equals("parallel"), 10_000, 16);
+        filmStorage = database.filmDbStorage(filmRepository, new LikeWriteBehind(filmRepository, false, 0, 0, 0),
+                parallelLookups);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parallelLookups.shutdown();
+        database.shutdown();
+    }
+
+    @Benchmark
+    public Film filmById() {
+        return filmStorage.getFilmById(FILM_ID).orElseThrow();
+    }
+
+    @Benchmark
+    public Collection<Film> topFilms() {
+        return filmStorage.getTopFilms(10);
+    }
+}
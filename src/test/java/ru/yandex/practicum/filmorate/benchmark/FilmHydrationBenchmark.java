@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.dal.FilmRepository;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /films/{id}: четыре последовательных запроса против запроса с агрегацией жанров
+ * и отдельного потокового чтения лайков (в ARRAY_AGG помещается не больше 65536 лайков).
+ * Количество обращений к базе на вызов печатается после каждого прогона.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilmHydrationBenchmark {
+
+    private static final long FILM_ID = 1;
+
+    @Param({"10", "1000", "100000"})
+    private int likesPerFilm;
+
+    private BenchmarkDatabase database;
+    private FilmRepository filmRepository;
+    private long operations;
+    private long statements;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seedUsers(likesPerFilm);
+        database.seedFilms(1);
+        database.seedFilmGenres(FILM_ID, 3);
+        database.seedFilmLikes(FILM_ID, likesPerFilm);
+        filmRepository = database.filmRepository();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%nlikesPerFilm=%d: %.2f statements per call%n",
+                likesPerFilm, (double) statements / operations);
+        database.shutdown();
+    }
+
+    @Benchmark
+    public Film separateQueries() {
+        long before = database.getStatementCount();
+
+        Film film = filmRepository.getFilmById(FILM_ID).orElseThrow();
+        film.setGenres(filmRepository.getFilmGenres(film.getId()));
+        film.setUsersLikes(filmRepository.getFilmUserLikes(film.getId()));
+
+        count(before);
+        return film;
+    }
+
+    @Benchmark
+    public Film joinedQuery() {
+        long before = database.getStatementCount();
+
+        Film film = filmRepository.getHydratedFilmById(FILM_ID).orElseThrow();
+        film.setUsersLikes(filmRepository.getFilmUserLikes(film.getId()));
+
+        count(before);
+        return film;
+    }
+
+    private void count(long statementsBefore) {
+        operations++;
+        statements += database.getStatementCount() - statementsBefore;
+    }
+}
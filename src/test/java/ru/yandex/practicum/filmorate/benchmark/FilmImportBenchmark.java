@@ -0,0 +1,98 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Импорт каталога через HTTP: POST /films на каждый фильм против POST /films/batch.
+ * Результат - фильмов в секунду, у каждого фильма три жанра. Приложение поднимается
+ * целиком на встроенной H2, логирование запросов отключено для обоих вариантов.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+@OperationsPerInvocation(FilmImportBenchmark.FILMS_PER_INVOCATION)
+public class FilmImportBenchmark {
+
+    static final int FILMS_PER_INVOCATION = 1000;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private URI filmsUri;
+    private URI batchUri;
+    private List<String> films;
+    private String batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = SpringApplication.run(FilmorateApplication.class,
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:import;DB_CLOSE_DELAY=-1",
+                "--logging.level.root=WARN",
+                "--logging.level.org.zalando.logbook=OFF");
+        WebServer webServer = ((ServletWebServerApplicationContext) context).getWebServer();
+        filmsUri = URI.create("http://localhost:" + webServer.getPort() + "/films");
+        batchUri = URI.create("http://localhost:" + webServer.getPort() + "/films/batch");
+        client = HttpClient.newHttpClient();
+
+        films = IntStream.range(0, FILMS_PER_INVOCATION)
+                .mapToObj(FilmImportBenchmark::filmJson)
+                .toList();
+        batch = films.stream().collect(Collectors.joining(",", "[", "]"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int filmPerRequest() throws IOException, InterruptedException {
+        int status = 0;
+        for (String film : films) {
+            status = post(filmsUri, film);
+        }
+        return status;
+    }
+
+    @Benchmark
+    public int batch() throws IOException, InterruptedException {
+        return post(batchUri, batch);
+    }
+
+    private int post(URI uri, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Unexpected status " + response.statusCode() + " for " + uri);
+        }
+        return response.statusCode();
+    }
+
+    private static String filmJson(int i) {
+        return String.format("{\"name\":\"film%d\",\"description\":\"description%d\",\"releaseDate\":\"2000-01-01\","
+                        + "\"duration\":%d,\"mpa\":{\"id\":%d},\"genres\":[{\"id\":%d},{\"id\":%d},{\"id\":%d}]}",
+                i, i, 90 + i % 60, 1 + i % 5, 1 + i % 6, 1 + (i + 1) % 6, 1 + (i + 2) % 6);
+    }
+}
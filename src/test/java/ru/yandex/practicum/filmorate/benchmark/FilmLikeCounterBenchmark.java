@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.storage.film.FilmLeaderboard;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Счётчики лайков в памяти при всплеске лайков одного фильма: 64 потока лайкают один и тот же фильм,
+ * изредка читая топ. Прежний рейтинг ("legacy") на каждом лайке сериализует потоки на compute
+ * и переставляет фильм в упорядоченном рейтинге, новый ("striped") только увеличивает LongAdder.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Threads(64)
+@State(Scope.Benchmark)
+public class FilmLikeCounterBenchmark {
+
+    private static final long HOT_FILM_ID = 1;
+    private static final int TOP_READ_EVERY = 1024;
+
+    @Param({"10000"})
+    private int filmsCount;
+
+    @Param({"legacy", "striped"})
+    private String counters;
+
+    private LegacyFilmLeaderboard legacyLeaderboard;
+    private FilmLeaderboard leaderboard;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<Long, Long> likesByFilmId = new HashMap<>();
+        for (long filmId = 1; filmId <= filmsCount; filmId++) {
+            likesByFilmId.put(filmId, filmId % 100);
+        }
+        legacyLeaderboard = new LegacyFilmLeaderboard();
+        legacyLeaderboard.load(likesByFilmId);
+        leaderboard = new FilmLeaderboard();
+        leaderboard.load(likesByFilmId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long likes = counters.equals("legacy")
+                ? legacyLeaderboard.getLikesCount(HOT_FILM_ID)
+                : leaderboard.getLikesCount(HOT_FILM_ID);
+        System.out.printf("%n%s: hot film has %d likes%n", counters, likes);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadLikes {
+        private int likes;
+    }
+
+    @Benchmark
+    public int like(ThreadLikes thread) {
+        boolean readTop = ++thread.likes % TOP_READ_EVERY == 0;
+        if (counters.equals("legacy")) {
+            legacyLeaderboard.increment(HOT_FILM_ID);
+            return readTop ? legacyLeaderboard.getTopFilmIds(10).size() : 0;
+        }
+        leaderboard.increment(HOT_FILM_ID);
+        return readTop ? leaderboard.getTopFilmIds(10).size() : 0;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.dal.FilmRepository;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeWriteBehind;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Поток PUT /films/{id}/like/{userId} во время премьеры без HTTP: проверка фильма и лайк
+ * от нового пользователя из нескольких потоков. Лайки пишутся сразу ("sync") или через
+ * {@link LikeWriteBehind} ("write-behind"). После прогона печатается число обращений к базе на лайк.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Threads(8)
+@State(Scope.Benchmark)
+public class FilmLikeThroughputBenchmark {
+
+    private static final int USERS_COUNT = 200_000;
+
+    @Param({"100"})
+    private int filmsCount;
+
+    @Param({"sync", "write-behind"})
+    private String mode;
+
+    private BenchmarkDatabase database;
+    private LikeWriteBehind likeWriteBehind;
+    private FilmDbStorage filmStorage;
+    private final AtomicLong likes = new AtomicLong();
+    private long statementsBefore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seedUsers(USERS_COUNT);
+        database.seedFilms(filmsCount);
+
+        FilmRepository filmRepository = database.filmRepository();
+        likeWriteBehind = new LikeWriteBehind(filmRepository, mode.equals("write-behind"), 1000, 100, 100_000);
+        likeWriteBehind.start();
+        filmStorage = database.filmDbStorage(filmRepository, likeWriteBehind);
+        statementsBefore = database.getStatementCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        likeWriteBehind.stop();
+        long stored = database.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM films_likes", Long.class);
+        System.out.printf("%n%s: %d likes, %d stored, %.2f statements per like%n",
+                mode, likes.get(), stored, (double) (database.getStatementCount() - statementsBefore) / likes.get());
+        database.shutdown();
+    }
+
+    // каждый лайк - новая пара (фильм, пользователь), лайки равномерно распределены по фильмам
+    @Benchmark
+    public int like() {
+        long like = likes.getAndIncrement();
+        long filmId = like % filmsCount + 1;
+        long userId = like / filmsCount % USERS_COUNT + 1;
+
+        if (!filmStorage.isFilmExist(filmId)) {
+            throw new IllegalStateException();
+        }
+        return filmStorage.addUserLike(filmId, userId);
+    }
+}
@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DELETE и PUT /films/{id}/like/{userId} для популярного фильма без HTTP: проверки FilmService
+ * и запись в базу. Прежний путь перед удалением дважды читал фильм со всеми лайками и искал лайк
+ * в списке, перед добавлением - ещё раз. Новый путь - точечные EXISTS по первичным ключам.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class FilmLikeToggleBenchmark {
+
+    private static final long FILM_ID = 1;
+
+    @Param({"1000000"})
+    private int likesPerFilm;
+
+    @Param({"legacy", "exists"})
+    private String checks;
+
+    private BenchmarkDatabase database;
+    private FilmDbStorage filmStorage;
+    private long userId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seedUsers(likesPerFilm);
+        database.seedFilms(1);
+        database.seedFilmLikes(FILM_ID, likesPerFilm);
+        filmStorage = database.filmDbStorage();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    // снимает и возвращает лайк очередного пользователя, число лайков фильма не меняется
+    @Benchmark
+    public boolean unlikeAndLike() {
+        userId = userId % likesPerFilm + 1;
+
+        if (checks.equals("legacy")) {
+            filmStorage.getFilmById(FILM_ID).orElseThrow();
+            if (!filmStorage.getFilmById(FILM_ID).orElseThrow().getUsersLikes().contains(userId)) {
+                throw new IllegalStateException();
+            }
+            filmStorage.deleteUserLike(FILM_ID, userId);
+            filmStorage.getFilmById(FILM_ID).orElseThrow();
+        } else {
+            if (!filmStorage.isFilmExist(FILM_ID) || !filmStorage.isFilmUserLikeExist(FILM_ID, userId)) {
+                throw new IllegalStateException();
+            }
+            filmStorage.deleteUserLike(FILM_ID, userId);
+            filmStorage.isFilmExist(FILM_ID);
+        }
+        return filmStorage.addUserLike(FILM_ID, userId) == 1;
+    }
+}
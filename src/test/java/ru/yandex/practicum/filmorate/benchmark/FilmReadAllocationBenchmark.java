@@ -0,0 +1,69 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.dto.film.FilmResponseDTO;
+import ru.yandex.practicum.filmorate.mapper.film.FilmMapper;
+import ru.yandex.practicum.filmorate.mapper.film.GenreMapper;
+import ru.yandex.practicum.filmorate.mapper.film.MpaRateMapper;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /films/{id} для популярного фильма без HTTP: чтение из базы, DTO и JSON-ответ.
+ * Выделение памяти на запрос смотреть профилировщиком {@code -prof gc} (gc.alloc.rate.norm).
+ * Параметр likes повторяет параметр запроса: "ids" - список лайкнувших, "count" - только их число.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class FilmReadAllocationBenchmark {
+
+    private static final long FILM_ID = 1;
+
+    @Param({"500000"})
+    private int likesPerFilm;
+
+    @Param({"ids", "count"})
+    private String likes;
+
+    private BenchmarkDatabase database;
+    private FilmDbStorage filmStorage;
+    private FilmMapper filmMapper;
+    private ObjectMapper objectMapper;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seedUsers(likesPerFilm);
+        database.seedFilms(1);
+        database.seedFilmGenres(FILM_ID, 3);
+        database.seedFilmLikes(FILM_ID, likesPerFilm);
+
+        filmStorage = database.filmDbStorage();
+        filmMapper = new FilmMapper(new GenreMapper(), new MpaRateMapper());
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public FilmResponseDTO getFilm() throws IOException {
+        FilmResponseDTO film = filmMapper.toFilmResponseDTO(filmStorage.getFilmById(FILM_ID, likes.equals("ids")).orElseThrow());
+        objectMapper.writeValue(OutputStream.nullOutputStream(), film);
+        return film;
+    }
+}
@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.storage.film.FilmRecommender;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /users/{id}/recommendations без обращения к базе: подбор фильмов по {@link FilmRecommender}
+ * на синтетических лайках. У каждого пользователя likesPerUser лайков, популярность фильмов
+ * убывает по степенному закону, поэтому у популярных фильмов десятки тысяч лайков.
+ * Режим SampleTime показывает перцентили задержки одного запроса.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class FilmRecommenderBenchmark {
+
+    private static final int RECOMMENDATIONS_COUNT = 10;
+    private static final int WORK_LIMIT = 200_000;
+
+    @Param({"100000"})
+    private int usersCount;
+
+    @Param({"20000"})
+    private int filmsCount;
+
+    @Param({"100"})
+    private int likesPerUser;
+
+    private FilmRecommender recommender;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // лайки добавляются напрямую, как из FilmService, без начальной загрузки из базы
+        recommender = new FilmRecommender(null);
+        SplittableRandom seeded = new SplittableRandom(42);
+
+        long heapBefore = usedHeap();
+        for (int userId = 1; userId <= usersCount; userId++) {
+            for (int i = 0; i < likesPerUser; i++) {
+                recommender.addLike(randomFilm(seeded), userId);
+            }
+        }
+        long likes = (long) usersCount * likesPerUser;
+        System.out.printf("%nFilm recommender: %d likes (with repeats), %.1f bytes per like%n",
+                likes, (double) (usedHeap() - heapBefore) / likes);
+
+        random = new SplittableRandom(7);
+    }
+
+    @Benchmark
+    public List<Long> recommendations() {
+        return recommender.getRecommendedFilmIds(1 + random.nextInt(usersCount), RECOMMENDATIONS_COUNT, WORK_LIMIT);
+    }
+
+    @Benchmark
+    public List<Long> recommendationsWithLikes() {
+        long userId = 1 + random.nextInt(usersCount);
+        recommender.addLike(randomFilm(random), userId);
+        return recommender.getRecommendedFilmIds(userId, RECOMMENDATIONS_COUNT, WORK_LIMIT);
+    }
+
+    // фильм с номером около filmsCount * r^3: первые фильмы намного популярнее последних
+    private long randomFilm(SplittableRandom source) {
+        double r = source.nextDouble();
+        return 1 + (long) (filmsCount * r * r * r);
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,82 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /users/{id}/friends/suggestions без обращения к базе: обход друзей друзей по {@link FriendGraph}.
+ * У каждого пользователя friendsPerUser случайных друзей, у каждого сотого - в hubFactor раз больше,
+ * чтобы ограничение обхода срабатывало на пользователях с большим окружением.
+ * Режим SampleTime показывает перцентили задержки одного запроса.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class FriendSuggestionsBenchmark {
+
+    private static final int SUGGESTIONS_COUNT = 10;
+    private static final int WORK_LIMIT = 100_000;
+
+    @Param({"1000000"})
+    private int usersCount;
+
+    @Param({"50"})
+    private int friendsPerUser;
+
+    @Param({"20"})
+    private int hubFactor;
+
+    private FriendGraph graph;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom seeded = new SplittableRandom(42);
+        FriendGraph.Builder builder = new FriendGraph.Builder();
+        long edges = 0;
+
+        for (int userId = 1; userId <= usersCount; userId++) {
+            int degree = userId % 100 == 0 ? friendsPerUser * hubFactor : friendsPerUser;
+            int[] friends = new int[degree];
+            for (int i = 0; i < degree; i++) {
+                friends[i] = 1 + seeded.nextInt(usersCount);
+            }
+            Arrays.sort(friends);
+
+            int previous = 0;
+            for (int friendId : friends) {
+                if (friendId != previous && friendId != userId) {
+                    builder.add(userId, friendId);
+                    edges++;
+                }
+                previous = friendId;
+            }
+        }
+
+        graph = new FriendGraph(10_000);
+        graph.load(builder);
+        random = new SplittableRandom(7);
+        System.out.printf("%nFriend graph: %d users, %d friendships%n", usersCount, edges);
+    }
+
+    @Benchmark
+    public List<FriendGraph.Suggestion> suggestions() {
+        return graph.getSuggestions(1 + random.nextInt(usersCount), SUGGESTIONS_COUNT, WORK_LIMIT);
+    }
+
+    // запись в граф во время чтения: строки-изменения поверх основы
+    @Benchmark
+    public List<FriendGraph.Suggestion> suggestionsWithWrites() {
+        long userId = 1 + random.nextInt(usersCount);
+        graph.addFriend(userId, 1 + random.nextInt(usersCount));
+        return graph.getSuggestions(userId, SUGGESTIONS_COUNT, WORK_LIMIT);
+    }
+}
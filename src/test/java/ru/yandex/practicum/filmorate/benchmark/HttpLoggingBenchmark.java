@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность приложения по HTTP с логированием Logbook: выключено ("off"), каждый запрос
+ * с полными телами синхронно на потоке запроса, как раньше ("full-sync"), каждый запрос с телами
+ * через асинхронный вывод ("full-async") и настройки по умолчанию - выборка и обрезка тел ("sampled").
+ * Половина запросов - страница из 100 фильмов, половина - фильм по id.
+ * Лог пишется в файл, после прогона печатается его размер.
+ * <p>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=HttpLoggingBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Threads(16)
+@State(Scope.Benchmark)
+public class HttpLoggingBenchmark {
+
+    private static final int FILMS_COUNT = 10_000;
+    private static final int USERS_COUNT = 1_000;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"off", "full-sync", "full-async", "sampled"})
+    private String logging;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private String baseUrl;
+    private Path logFile;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // консольный вывод logback идёт в System.out, подменяем его файлом
+        logFile = Files.createTempFile("filmorate-http-log", ".log");
+        stdout = System.out;
+        System.setOut(new PrintStream(new FileOutputStream(logFile.toFile()), false));
+
+        context = SpringApplication.run(FilmorateApplication.class,
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:load;DB_CLOSE_DELAY=-1",
+                "--spring.h2.console.enabled=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.zalando.logbook=" + (logging.equals("off") ? "OFF" : "TRACE"),
+                "--filmorate.http-log.sample-rate=" + (logging.startsWith("full") ? 1 : 0.1),
+                "--logbook.write.max-body-size=" + (logging.startsWith("full") ? -1 : 2048));
+
+        if (logging.equals("full-sync")) {
+            // консоль подключается к корневому логгеру напрямую, мимо очереди AsyncAppender
+            Logger root = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+            AsyncAppender async = (AsyncAppender) root.getAppender("ASYNC_CONSOLE");
+            root.addAppender(async.getAppender("CONSOLE"));
+            root.detachAppender(async);
+        }
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("INSERT INTO films(name, description, release_date, duration, mpa_rate) "
+                + "SELECT 'film ' || x, 'description', DATE '2000-01-01', 120, 1 FROM SYSTEM_RANGE(1, ?)", FILMS_COUNT);
+        jdbcTemplate.update("INSERT INTO users(name, email, login, birthday) "
+                + "SELECT 'user ' || x, 'user' || x || '@mail.ru', 'user' || x, DATE '1990-01-01' "
+                + "FROM SYSTEM_RANGE(1, ?)", USERS_COUNT);
+        // у каждого фильма от 0 до 49 лайков
+        jdbcTemplate.update("INSERT INTO films_likes(film_id, user_id) "
+                + "SELECT f.x, u.x FROM SYSTEM_RANGE(1, ?) f JOIN SYSTEM_RANGE(1, 49) u ON u.x <= MOD(f.x, 50)",
+                FILMS_COUNT);
+        context.getBean(FilmDbStorage.class).warmUpLeaderboard();
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        System.out.close();
+        System.setOut(stdout);
+        System.out.printf("%n%s: %d KB logged%n", logging, Files.size(logFile) / 1024);
+        Files.deleteIfExists(logFile);
+    }
+
+    @Benchmark
+    public int request() throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String path = random.nextBoolean()
+                ? "/films?limit=" + PAGE_SIZE + "&after=" + random.nextInt(FILMS_COUNT - PAGE_SIZE)
+                : "/films/" + (random.nextInt(FILMS_COUNT) + 1);
+
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + path)).build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(path + " returned " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+}
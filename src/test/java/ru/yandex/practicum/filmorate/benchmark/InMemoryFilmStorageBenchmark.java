@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MpaRate;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность InMemoryFilmStorage при конкурентном доступе: лайк и снятие лайка
+ * случайному фильму, чтение фильма и топа. Число потоков задаётся JMH, например {@code -t 8}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class InMemoryFilmStorageBenchmark {
+
+    private static final int USERS = 10_000;
+
+    @Param({"10000"})
+    private int catalogSize;
+
+    @Param({"20"})
+    private int likesPerFilm;
+
+    private InMemoryFilmStorage storage;
+
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storage = new InMemoryFilmStorage();
+        SplittableRandom random = new SplittableRandom(42);
+
+        for (int i = 0; i < catalogSize; i++) {
+            long filmId = storage.createFilm(Film.builder()
+                    .name("film" + i)
+                    .description("description" + i)
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .duration(90)
+                    .mpaRate(MpaRate.builder().id(1).build())
+                    .build());
+            for (int like = 0; like < likesPerFilm; like++) {
+                storage.addUserLike(filmId, random.nextInt(USERS) + 1);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean likeAndUnlike(ThreadRandom state) {
+        long filmId = state.random.nextInt(catalogSize) + 1;
+        // пользователи вне диапазона начальных лайков, поэтому размер каталога лайков не растёт
+        long userId = USERS + state.random.nextInt(USERS) + 1;
+
+        storage.addUserLike(filmId, userId);
+        return storage.deleteUserLike(filmId, userId);
+    }
+
+    @Benchmark
+    public Optional<Film> getFilmById(ThreadRandom state) {
+        return storage.getFilmById(state.random.nextInt(catalogSize) + 1);
+    }
+
+    @Benchmark
+    public Collection<Film> getTopFilms() {
+        return storage.getTopFilms(10);
+    }
+}
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Прежняя реализация FilmLeaderboard (счётчик внутри записи рейтинга, каждый лайк переставляет
+ * фильм в упорядоченном рейтинге под compute) для сравнения в {@link FilmLikeCounterBenchmark}.
+ */
+public class LegacyFilmLeaderboard {
+
+    private static final Comparator<Rank> RANK_ORDER = Comparator.comparingLong(Rank::likes)
+            .reversed()
+            .thenComparingLong(Rank::filmId);
+
+    private final Map<Long, Rank> ranks = new ConcurrentHashMap<>();
+    private final NavigableSet<Rank> orderedRanks = new ConcurrentSkipListSet<>(RANK_ORDER);
+
+    public void load(Map<Long, Long> likesByFilmId) {
+        likesByFilmId.forEach((filmId, likes) -> ranks.compute(filmId, (id, rank) -> replace(rank, id, likes)));
+    }
+
+    public void increment(long filmId) {
+        ranks.compute(filmId, (id, rank) -> replace(rank, id, (rank == null ? 0 : rank.likes()) + 1));
+    }
+
+    public long getLikesCount(long filmId) {
+        Rank rank = ranks.get(filmId);
+        return rank == null ? 0 : rank.likes();
+    }
+
+    public List<Long> getTopFilmIds(int count) {
+        List<Long> filmIds = new ArrayList<>(count);
+        Set<Long> seen = new HashSet<>();
+
+        for (Rank rank : orderedRanks) {
+            if (filmIds.size() >= count) {
+                break;
+            }
+            if (seen.add(rank.filmId())) {
+                filmIds.add(rank.filmId());
+            }
+        }
+        return filmIds;
+    }
+
+    private Rank replace(Rank current, long filmId, long likes) {
+        if (current != null) {
+            orderedRanks.remove(current);
+        }
+        Rank updated = new Rank(Math.max(likes, 0), filmId);
+        orderedRanks.add(updated);
+        return updated;
+    }
+
+    private record Rank(long likes, long filmId) {
+    }
+}
@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Прежняя реализация InMemoryUserStorage (TreeMap и Set&lt;Long&gt; друзей у каждого пользователя)
+ * для сравнения в {@link UserStorageBenchmark}. Не потокобезопасна.
+ */
+public class LegacyInMemoryUserStorage implements UserStorage {
+
+    private final TreeMap<Long, User> users = new TreeMap<>();
+    private Long userId = 1L;
+
+    @Override
+    public Long createUser(User newUser) {
+        newUser.setId(userId++);
+        newUser.setFriends(new HashSet<>());
+        users.put(newUser.getId(), newUser);
+        return newUser.getId();
+    }
+
+    @Override
+    public Collection<User> getUsers() {
+        return users.values();
+    }
+
+    @Override
+    public Collection<User> getUsersPage(long afterUserId, int limit) {
+        return users.tailMap(afterUserId, false)
+                .values()
+                .stream()
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean updateUser(User userToUpdate) {
+        if (userToUpdate.getFriends() == null) {
+            userToUpdate.setFriends(new HashSet<>());
+        }
+        users.put(userToUpdate.getId(), userToUpdate);
+        return true;
+    }
+
+    @Override
+    public Optional<User> findUserById(long id) {
+        Optional<User> userOptional = Optional.empty();
+
+        if (users.containsKey(id)) {
+            userOptional = Optional.of(users.get(id));
+        }
+        return userOptional;
+    }
+
+    @Override
+    public boolean isUserExist(long id) {
+        return users.containsKey(id);
+    }
+
+    @Override
+    public boolean addFriend(long userId, long friendId) {
+        users.get(userId).getFriends().add(friendId);
+        return true;
+    }
+
+    @Override
+    public boolean deleteFriend(long userId, long friendId) {
+        users.get(userId).getFriends().remove(friendId);
+        return true;
+    }
+
+    @Override
+    public Set<User> getUserFriends(long userId) {
+        return users.get(userId).getFriends()
+                .stream()
+                .map(users::get)
+                .collect(Collectors.toSet());
+    }
+
+    // прежний алгоритм UserService.getUserCommonFriends
+    @Override
+    public List<User> getCommonFriends(long userId, long otherUserId) {
+        Set<User> otherUserFriends = getUserFriends(otherUserId);
+
+        return getUserFriends(userId).stream()
+                .filter(otherUserFriends::contains)
+                .collect(Collectors.toList());
+    }
+
+    // прямолинейный подсчёт по Set<Long> друзей, без ограничения обхода
+    @Override
+    public List<FriendSuggestion> getFriendSuggestions(long userId, int count, int maxVisitedEdges) {
+        Set<Long> friends = users.get(userId).getFriends();
+        Map<Long, Integer> mutualFriends = new HashMap<>();
+
+        for (Long friendId : friends) {
+            for (Long candidateId : users.get(friendId).getFriends()) {
+                if (candidateId != userId && !friends.contains(candidateId)) {
+                    mutualFriends.merge(candidateId, 1, Integer::sum);
+                }
+            }
+        }
+
+        return mutualFriends.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(count)
+                .map(entry -> FriendSuggestion.builder()
+                        .user(users.get(entry.getKey()))
+                        .mutualFriends(entry.getValue())
+                        .build())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,416 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Нагрузочный прогон приложения по HTTP на синтетическом каталоге {@link DatasetGenerator}.
+ * <p>
+ * Каталог генерируется в H2 в памяти до старта приложения, поэтому рейтинг фильмов и остальные
+ * кэши прогреваются так же, как при обычном запуске. Затем клиенты в отдельных потоках без пауз
+ * отправляют смесь запросов к фильмам и пользователям (веса - в {@link Endpoint}); популярные фильмы
+ * и пользователи запрашиваются чаще, как и при генерации. Фильмы читаются с числом лайков вместо списка
+ * лайкнувших: у самых популярных фильмов их десятки тысяч. У каждого клиента свой пользователь,
+ * от имени которого ставятся лайки и добавляются друзья, поэтому запросы не конфликтуют.
+ * После прогрева печатаются пропускная способность и перцентили задержки по каждому запросу.
+ * Клиенты и приложение работают в одной JVM и делят процессоры.
+ * <p>
+ * Параметры - ключ=значение, остальные аргументы (--logging.level.root=INFO и т.п.) передаются приложению:
+ * mvn -Ploadtest test-compile exec:exec -Dloadtest="users=100000 films=20000 clients=16 duration=60"
+ */
+public class LoadTest {
+
+    private static final Map<String, String> DEFAULT_SETTINGS = Map.of(
+            "users", "100000",
+            "films", "20000",
+            // в среднем лайков и друзей на пользователя
+            "likes", "20",
+            "friends", "10",
+            "seed", "42",
+            "clients", "16",
+            // секунды
+            "warmup", "10",
+            "duration", "30");
+
+    private static final Map<String, String> DEFAULT_APPLICATION_ARGS = Map.of(
+            "server.port", "0",
+            // база, заполненная генератором: EmbeddedDatabaseBuilder создаёт её с пустым паролем
+            "spring.datasource.url", "jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+            "spring.datasource.password", "",
+            "spring.h2.console.enabled", "false",
+            "logging.level.root", "WARN",
+            "logging.level.org.zalando.logbook", "OFF");
+
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * Запросы смеси и их веса: чтение заметно чаще записи.
+     */
+    enum Endpoint {
+        GET_FILM("GET /films/{id}?likes=count", 30),
+        GET_POPULAR("GET /films/popular?likes=count", 15),
+        GET_FILMS_PAGE("GET /films?limit&after", 5),
+        GET_USER("GET /users/{id}", 10),
+        GET_FRIENDS("GET /users/{id}/friends", 10),
+        GET_COMMON_FRIENDS("GET /users/{id}/friends/common/{otherId}", 5),
+        GET_RECOMMENDATIONS("GET /users/{id}/recommendations", 5),
+        GET_FRIEND_SUGGESTIONS("GET /users/{id}/friends/suggestions", 3),
+        ADD_LIKE("PUT /films/{id}/like/{userId}", 8),
+        DELETE_LIKE("DELETE /films/{id}/like/{userId}", 4),
+        ADD_FRIEND("PUT /users/{id}/friends/{friendId}", 3),
+        DELETE_FRIEND("DELETE /users/{id}/friends/{friendId}", 2),
+        CREATE_USER("POST /users", 1),
+        CREATE_FILM("POST /films", 1);
+
+        private final String path;
+        private final int weight;
+
+        Endpoint(String path, int weight) {
+            this.path = path;
+            this.weight = weight;
+        }
+    }
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static volatile boolean recording;
+    private static volatile boolean stopped;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new HashMap<>(DEFAULT_SETTINGS);
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                applicationArgs.add(arg);
+                continue;
+            }
+            String[] keyAndValue = arg.split("=", 2);
+            if (keyAndValue.length != 2 || !DEFAULT_SETTINGS.containsKey(keyAndValue[0])) {
+                throw new IllegalArgumentException("Unknown load test setting: " + arg
+                        + ", expected key=value with key one of " + DEFAULT_SETTINGS.keySet());
+            }
+            settings.put(keyAndValue[0], keyAndValue[1]);
+        }
+        // свойства приложения по умолчанию, если не заданы в аргументах
+        DEFAULT_APPLICATION_ARGS.forEach((key, value) -> {
+            if (applicationArgs.stream().noneMatch(arg -> arg.startsWith("--" + key + "="))) {
+                applicationArgs.add("--" + key + "=" + value);
+            }
+        });
+
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .setName("loadtest")
+                .setType(EmbeddedDatabaseType.H2)
+                .setScriptEncoding("UTF-8")
+                .addScript("classpath:schema.sql")
+                .addScript("classpath:data.sql")
+                .build();
+        long started = System.nanoTime();
+        DatasetGenerator.Dataset dataset = new DatasetGenerator(Long.parseLong(settings.get("seed")),
+                Integer.parseInt(settings.get("users")), Integer.parseInt(settings.get("films")),
+                Double.parseDouble(settings.get("likes")), Double.parseDouble(settings.get("friends")))
+                .load(new JdbcTemplate(database));
+        System.out.printf("Generated %d users, %d films, %d genres, %d likes, %d friendships in %.1f s%n",
+                dataset.getUsersCount(), dataset.getFilmsCount(), dataset.getGenresCount(),
+                dataset.getLikesCount(), dataset.getFriendshipsCount(), (System.nanoTime() - started) / 1e9);
+
+        ConfigurableApplicationContext context = SpringApplication.run(FilmorateApplication.class,
+                applicationArgs.toArray(String[]::new));
+        try {
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            run(baseUrl, dataset, settings);
+        } finally {
+            context.close();
+            database.shutdown();
+        }
+    }
+
+    private static void run(String baseUrl, DatasetGenerator.Dataset dataset, Map<String, String> settings)
+            throws Exception {
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        long seed = Long.parseLong(settings.get("seed"));
+        int clientsCount = Integer.parseInt(settings.get("clients"));
+
+        List<Client> clients = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clientsCount; i++) {
+            Client client = new Client(baseUrl, httpClient, dataset, new Random(seed + i));
+            clients.add(client);
+            threads.add(Thread.ofPlatform().name("load-client-" + i).start(client));
+        }
+
+        int warmup = Integer.parseInt(settings.get("warmup"));
+        System.out.printf("Warming up %d clients for %d s%n", clientsCount, warmup);
+        Thread.sleep(warmup * 1000L);
+        recording = true;
+        long measurementStarted = System.nanoTime();
+        Thread.sleep(Integer.parseInt(settings.get("duration")) * 1000L);
+        stopped = true;
+        double seconds = (System.nanoTime() - measurementStarted) / 1e9;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        report(clients, seconds);
+    }
+
+    private static void report(List<Client> clients, double seconds) {
+        System.out.printf("%n%-42s %8s %9s %8s %8s %8s %8s %8s %7s%n",
+                "Endpoint", "Count", "Ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "Errors");
+        Latencies total = new Latencies();
+        long totalErrors = 0;
+        for (Endpoint endpoint : Endpoint.values()) {
+            Latencies latencies = new Latencies();
+            long errors = 0;
+            for (Client client : clients) {
+                latencies.addAll(client.latencies.get(endpoint));
+                errors += client.errors.get(endpoint);
+            }
+            total.addAll(latencies);
+            totalErrors += errors;
+            printRow(endpoint.path, latencies, errors, seconds);
+        }
+        printRow("Total", total, totalErrors, seconds);
+    }
+
+    private static void printRow(String name, Latencies latencies, long errors, double seconds) {
+        long[] sorted = latencies.sorted();
+        System.out.printf("%-42s %8d %9.1f %8.2f %8.2f %8.2f %8.2f %8.2f %7d%n", name, sorted.length,
+                sorted.length / seconds, percentile(sorted, 0.5), percentile(sorted, 0.9),
+                percentile(sorted, 0.99), percentile(sorted, 0.999),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6, errors);
+    }
+
+    // в миллисекундах, по ближайшему рангу
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+
+    /**
+     * Клиент без пауз между запросами. Лайки и друзья своего пользователя он помнит,
+     * чтобы не ставить лайк повторно и не удалять то, чего нет.
+     */
+    private static class Client implements Runnable {
+
+        private final String baseUrl;
+        private final HttpClient httpClient;
+        private final DatasetGenerator.Dataset dataset;
+        private final Random random;
+        private final Endpoint[] endpointByTicket;
+        private final Map<Endpoint, Latencies> latencies = new EnumMap<>(Endpoint.class);
+        private final Map<Endpoint, Long> errors = new EnumMap<>(Endpoint.class);
+
+        private long userId;
+        private final List<Long> likedFilmIds = new ArrayList<>();
+        private final Set<Long> likedFilmIdSet = new HashSet<>();
+        private final List<Long> friendIds = new ArrayList<>();
+        private final Set<Long> friendIdSet = new HashSet<>();
+
+        Client(String baseUrl, HttpClient httpClient, DatasetGenerator.Dataset dataset, Random random) {
+            this.baseUrl = baseUrl;
+            this.httpClient = httpClient;
+            this.dataset = dataset;
+            this.random = random;
+
+            List<Endpoint> tickets = new ArrayList<>();
+            for (Endpoint endpoint : Endpoint.values()) {
+                latencies.put(endpoint, new Latencies());
+                errors.put(endpoint, 0L);
+                for (int i = 0; i < endpoint.weight; i++) {
+                    tickets.add(endpoint);
+                }
+            }
+            endpointByTicket = tickets.toArray(Endpoint[]::new);
+        }
+
+        @Override
+        public void run() {
+            createUser();
+            while (!stopped) {
+                Endpoint endpoint = endpointByTicket[random.nextInt(endpointByTicket.length)];
+                if (endpoint == Endpoint.DELETE_LIKE && likedFilmIds.isEmpty()) {
+                    endpoint = Endpoint.ADD_LIKE;
+                } else if (endpoint == Endpoint.DELETE_FRIEND && friendIds.isEmpty()) {
+                    endpoint = Endpoint.ADD_FRIEND;
+                }
+                call(endpoint);
+            }
+        }
+
+        private void call(Endpoint endpoint) {
+            switch (endpoint) {
+                case GET_FILM -> send(endpoint, get("/films/" + dataset.randomFilmId(random) + "?likes=count"));
+                case GET_POPULAR -> send(endpoint, get("/films/popular?likes=count"));
+                case GET_FILMS_PAGE ->
+                        send(endpoint, get("/films?limit=" + PAGE_SIZE + "&after=" + (dataset.uniformFilmId(random) - 1)));
+                case GET_USER -> send(endpoint, get("/users/" + dataset.randomUserId(random)));
+                case GET_FRIENDS -> send(endpoint, get("/users/" + dataset.randomUserId(random) + "/friends"));
+                case GET_COMMON_FRIENDS -> {
+                    long firstUserId = dataset.randomUserId(random);
+                    long otherUserId;
+                    do {
+                        otherUserId = dataset.randomUserId(random);
+                    } while (otherUserId == firstUserId);
+                    send(endpoint, get("/users/" + firstUserId + "/friends/common/" + otherUserId));
+                }
+                case GET_RECOMMENDATIONS ->
+                        send(endpoint, get("/users/" + dataset.randomUserId(random) + "/recommendations"));
+                case GET_FRIEND_SUGGESTIONS ->
+                        send(endpoint, get("/users/" + dataset.randomUserId(random) + "/friends/suggestions"));
+                case ADD_LIKE -> {
+                    long filmId;
+                    do {
+                        filmId = dataset.randomFilmId(random);
+                    } while (likedFilmIdSet.contains(filmId));
+                    if (send(endpoint, request("/films/" + filmId + "/like/" + userId).PUT(noBody())) != null) {
+                        likedFilmIds.add(filmId);
+                        likedFilmIdSet.add(filmId);
+                    }
+                }
+                case DELETE_LIKE -> {
+                    long filmId = removeRandom(likedFilmIds, likedFilmIdSet);
+                    send(endpoint, request("/films/" + filmId + "/like/" + userId).DELETE());
+                }
+                case ADD_FRIEND -> {
+                    long friendId;
+                    do {
+                        friendId = dataset.randomUserId(random);
+                    } while (friendId == userId || friendIdSet.contains(friendId));
+                    if (send(endpoint, request("/users/" + userId + "/friends/" + friendId).PUT(noBody())) != null) {
+                        friendIds.add(friendId);
+                        friendIdSet.add(friendId);
+                    }
+                }
+                case DELETE_FRIEND -> {
+                    long friendId = removeRandom(friendIds, friendIdSet);
+                    send(endpoint, request("/users/" + userId + "/friends/" + friendId).DELETE());
+                }
+                case CREATE_USER -> createUser();
+                case CREATE_FILM -> send(endpoint, post("/films", String.format(
+                        "{\"name\":\"Load film\",\"description\":\"Created by load test\",\"releaseDate\":\"%s\","
+                                + "\"duration\":%d,\"mpa\":{\"id\":%d},\"genres\":[{\"id\":%d}]}",
+                        LocalDate.of(1930, 1, 1).plusDays(random.nextInt(95 * 365)),
+                        60 + random.nextInt(140), 1 + random.nextInt(5), 1 + random.nextInt(6))));
+            }
+        }
+
+        // новый пользователь становится пользователем клиента: дальше лайки и друзья - от его имени
+        private void createUser() {
+            String login = "load" + Math.abs(random.nextLong());
+            String body = send(Endpoint.CREATE_USER, post("/users", String.format(
+                    "{\"email\":\"%s@mail.ru\",\"login\":\"%s\",\"name\":\"Load user\",\"birthday\":\"1990-01-01\"}",
+                    login, login)));
+            if (body == null) {
+                if (userId == 0) {
+                    throw new IllegalStateException("Could not create a load test user");
+                }
+                return;
+            }
+            try {
+                userId = OBJECT_MAPPER.readTree(body).get("id").asLong();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unexpected user response: " + body, e);
+            }
+            likedFilmIds.clear();
+            likedFilmIdSet.clear();
+            friendIds.clear();
+            friendIdSet.clear();
+        }
+
+        private long removeRandom(List<Long> ids, Set<Long> idSet) {
+            int index = random.nextInt(ids.size());
+            long id = ids.get(index);
+            ids.set(index, ids.get(ids.size() - 1));
+            ids.remove(ids.size() - 1);
+            idSet.remove(id);
+            return id;
+        }
+
+        /**
+         * @return тело ответа или null, если запрос завершился ошибкой
+         */
+        private String send(Endpoint endpoint, HttpRequest.Builder request) {
+            long started = System.nanoTime();
+            HttpResponse<String> response;
+            try {
+                response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            } catch (IOException e) {
+                response = null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            long elapsed = System.nanoTime() - started;
+            boolean failed = response == null || response.statusCode() >= 400;
+            // запросы, завершившиеся после окончания замера, не учитываются
+            if (recording && !stopped) {
+                latencies.get(endpoint).add(elapsed);
+                if (failed) {
+                    errors.merge(endpoint, 1L, Long::sum);
+                }
+            }
+            return failed ? null : response.body();
+        }
+
+        private HttpRequest.Builder get(String path) {
+            return request(path).GET();
+        }
+
+        private HttpRequest.Builder post(String path, String json) {
+            return request(path).header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(json));
+        }
+
+        private HttpRequest.Builder request(String path) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path));
+        }
+
+        private static HttpRequest.BodyPublisher noBody() {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+    }
+
+    // задержки в наносекундах
+    private static class Latencies {
+
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(Latencies other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        long[] sorted() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
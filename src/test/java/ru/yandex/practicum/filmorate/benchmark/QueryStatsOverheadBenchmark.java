@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.dal.FilmRepository;
+import ru.yandex.practicum.filmorate.dal.stats.QueryStats;
+import ru.yandex.practicum.filmorate.dal.stats.QueryStatsAdvisor;
+import ru.yandex.practicum.filmorate.mapper.film.FilmResultSetExtractor;
+import ru.yandex.practicum.filmorate.mapper.film.FilmRowMapper;
+import ru.yandex.practicum.filmorate.mapper.film.GenreRowMapper;
+import ru.yandex.practicum.filmorate.mapper.film.MpaRateRowMapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Цена статистики запросов: точечный запрос FilmRepository.isFilmExist напрямую ("plain"),
+ * через {@link QueryStatsAdvisor} ("instrumented") и через него же внутри HTTP-запроса с подсчётом N+1
+ * ("request"). Накладные расходы - разница с "plain"; record - сама запись в {@link QueryStats}.
+ * С jdbc=stub JdbcTemplate отвечает без базы, и разница не тонет в разбросе времени H2.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryStatsOverheadBenchmark {
+
+    @Param({"plain", "instrumented", "request"})
+    private String mode;
+
+    @Param({"h2", "stub"})
+    private String jdbc;
+
+    private BenchmarkDatabase database;
+    private QueryStats queryStats;
+    private QueryStats.Query query;
+    private FilmRepository filmRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seedFilms(1);
+
+        queryStats = new QueryStats(Integer.MAX_VALUE);
+        query = queryStats.query("benchmark.record");
+        filmRepository = jdbc.equals("h2") ? database.filmRepository() : stubFilmRepository();
+        if (!mode.equals("plain")) {
+            ProxyFactory proxyFactory = new ProxyFactory(filmRepository);
+            proxyFactory.setProxyTargetClass(true);
+            proxyFactory.addAdvisor(new QueryStatsAdvisor(queryStats));
+            filmRepository = (FilmRepository) proxyFactory.getProxy();
+        }
+        if (mode.equals("request")) {
+            queryStats.startRequest();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        queryStats.finishRequest("benchmark");
+        database.shutdown();
+    }
+
+    private static FilmRepository stubFilmRepository() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate() {
+            @Override
+            public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+                return requiredType.cast(Boolean.TRUE);
+            }
+        };
+        return new FilmRepository(jdbcTemplate, new FilmRowMapper(), new MpaRateRowMapper(), new GenreRowMapper(),
+                new FilmResultSetExtractor());
+    }
+
+    @Benchmark
+    public boolean isFilmExist() {
+        return filmRepository.isFilmExist(1);
+    }
+
+    @Benchmark
+    public void record() {
+        queryStats.record(query, 1500, 1, false);
+    }
+}
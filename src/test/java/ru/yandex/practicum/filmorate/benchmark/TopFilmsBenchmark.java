@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MpaRate;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /films/popular на обоих хранилищах. Лайки есть только у первых {@code LIKED_FILMS}
+ * фильмов, остальная часть страницы добирается фильмами без лайков по возрастанию id.
+ * Перед замером проверяется, что оба хранилища отдают одинаковую страницу.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class TopFilmsBenchmark {
+
+    private static final int LIKED_FILMS = 100;
+    private static final int USERS = 1_000;
+
+    @Param({"1000000"})
+    private int catalogSize;
+
+    @Param({"10", "200"})
+    private int count;
+
+    @Param({"db", "memory"})
+    private String storageType;
+
+    private BenchmarkDatabase database;
+    private FilmStorage storage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seedUsers(USERS);
+        database.seedFilms(catalogSize);
+
+        InMemoryFilmStorage inMemoryStorage = new InMemoryFilmStorage();
+        for (int i = 0; i < catalogSize; i++) {
+            inMemoryStorage.createFilm(buildFilm(i));
+        }
+
+        for (int filmId = 1; filmId <= LIKED_FILMS; filmId++) {
+            int likes = USERS / filmId;
+            long id = filmId;
+            database.insertRows("INSERT INTO films_likes(film_id, user_id) VALUES (?, ?)", likes,
+                    i -> new Object[]{id, i + 1});
+            for (long userId = 1; userId <= likes; userId++) {
+                inMemoryStorage.addUserLike(filmId, userId);
+            }
+        }
+
+        FilmDbStorage dbStorage = database.filmDbStorage();
+
+        List<Long> dbPage = ids(dbStorage.getTopFilms(count));
+        List<Long> memoryPage = ids(inMemoryStorage.getTopFilms(count));
+        if (!dbPage.equals(memoryPage)) {
+            throw new IllegalStateException("Storages disagree: db=" + dbPage + ", memory=" + memoryPage);
+        }
+
+        storage = storageType.equals("db") ? dbStorage : inMemoryStorage;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public Collection<Film> getTopFilms() {
+        return storage.getTopFilms(count);
+    }
+
+    private static List<Long> ids(Collection<Film> films) {
+        return films.stream()
+                .map(Film::getId)
+                .toList();
+    }
+
+    private static Film buildFilm(int i) {
+        return Film.builder()
+                .name("film" + i)
+                .description("description" + i)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(90)
+                .mpaRate(MpaRate.builder().id(1).build())
+                .build();
+    }
+}
@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Прежний InMemoryUserStorage против хранилища с примитивными списками смежности.
+ * После заполнения печатается занятая хранилищем куча в байтах на одну дружбу.
+ * Прежняя реализация не потокобезопасна, поэтому по умолчанию замер в один поток;
+ * конкурентный режим нового хранилища: {@code -p storageType=concurrent -t 8}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class UserStorageBenchmark {
+
+    @Param({"100000"})
+    private int usersCount;
+
+    @Param({"50"})
+    private int friendsPerUser;
+
+    @Param({"legacy", "concurrent"})
+    private String storageType;
+
+    private UserStorage storage;
+
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long heapBefore = usedHeap();
+
+        storage = storageType.equals("legacy") ? new LegacyInMemoryUserStorage() : new InMemoryUserStorage();
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < usersCount; i++) {
+            storage.createUser(User.builder()
+                    .email("user" + i + "@mail.ru")
+                    .login("login" + i)
+                    .name("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+        }
+        for (long userId = 1; userId <= usersCount; userId++) {
+            for (int i = 0; i < friendsPerUser; i++) {
+                storage.addFriend(userId, random.nextInt(usersCount) + 1);
+            }
+        }
+
+        long friendships = storage.getUsers().stream().mapToLong(user -> user.getFriends().size()).sum();
+        System.out.printf("%n%s: %.1f bytes per friendship (%d friendships, %d MB total)%n", storageType,
+                (double) (usedHeap() - heapBefore) / friendships, friendships, (usedHeap() - heapBefore) >> 20);
+    }
+
+    @Benchmark
+    public boolean addAndDeleteFriend(ThreadRandom state) {
+        long userId = state.random.nextInt(usersCount) + 1;
+        // id вне диапазона пользователей, поэтому дружбы из заполнения не затрагиваются
+        long friendId = usersCount + state.random.nextInt(usersCount) + 1;
+
+        storage.addFriend(userId, friendId);
+        return storage.deleteFriend(userId, friendId);
+    }
+
+    @Benchmark
+    public Set<User> getUserFriends(ThreadRandom state) {
+        return storage.getUserFriends(state.random.nextInt(usersCount) + 1);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
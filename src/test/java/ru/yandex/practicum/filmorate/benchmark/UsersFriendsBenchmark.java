@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.dal.UserRepository;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * GET /users: загрузка друзей отдельным запросом на каждого пользователя против пакетной загрузки id.
+ * Количество обращений к базе на вызов печатается после каждого прогона.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class UsersFriendsBenchmark {
+
+    private static final int FRIENDS_PER_USER = 10;
+
+    @Param({"10000", "100000"})
+    private int usersCount;
+
+    private BenchmarkDatabase database;
+    private UserRepository userRepository;
+    private UserDbStorage userStorage;
+    private long operations;
+    private long statements;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seedUsers(usersCount);
+        database.seedFriendships(usersCount, FRIENDS_PER_USER);
+        userRepository = database.userRepository();
+        userStorage = new UserDbStorage(userRepository);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%nusersCount=%d: %.0f statements per call%n", usersCount, (double) statements / operations);
+        database.shutdown();
+    }
+
+    @Benchmark
+    public Collection<User> queryPerUser() {
+        long before = database.getStatementCount();
+
+        Collection<User> users = userRepository.getAllUsers();
+        users.forEach(user -> user.setFriends(userRepository.getUserFriends(user.getId()).stream()
+                .map(User::getId)
+                .collect(Collectors.toSet())));
+
+        count(before);
+        return users;
+    }
+
+    @Benchmark
+    public Collection<User> batchedFriendIds() {
+        long before = database.getStatementCount();
+
+        Collection<User> users = userStorage.getUsers();
+
+        count(before);
+        return users;
+    }
+
+    private void count(long statementsBefore) {
+        operations++;
+        statements += database.getStatementCount() - statementsBefore;
+    }
+}
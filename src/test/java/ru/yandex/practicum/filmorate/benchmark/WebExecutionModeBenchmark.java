@@ -0,0 +1,91 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузочный прогон приложения по HTTP в двух режимах: запросы на потоках Tomcat ("platform")
+ * и на виртуальных потоках с ограничением обращений к пулу соединений ("virtual").
+ * 256 клиентов запрашивают фильмы по id и топ; в режиме SampleTime JMH печатает p99.
+ * Закрепление виртуальных потоков печатается в вывод (-Djdk.tracePinnedThreads=short).
+ * <p>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=WebExecutionModeBenchmark
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Djdk.tracePinnedThreads=short"})
+@Threads(256)
+@State(Scope.Benchmark)
+public class WebExecutionModeBenchmark {
+
+    private static final int FILMS_COUNT = 10_000;
+    private static final int USERS_COUNT = 1_000;
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private String baseUrl;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = SpringApplication.run(FilmorateApplication.class,
+                "--server.port=0",
+                "--spring.threads.virtual.enabled=" + threads.equals("virtual"),
+                "--spring.datasource.url=jdbc:h2:mem:load;DB_CLOSE_DELAY=-1",
+                "--spring.h2.console.enabled=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.zalando.logbook=OFF");
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("INSERT INTO films(name, description, release_date, duration, mpa_rate) "
+                + "SELECT 'film ' || x, 'description', DATE '2000-01-01', 120, 1 FROM SYSTEM_RANGE(1, ?)", FILMS_COUNT);
+        jdbcTemplate.update("INSERT INTO users(name, email, login, birthday) "
+                + "SELECT 'user ' || x, 'user' || x || '@mail.ru', 'user' || x, DATE '1990-01-01' "
+                + "FROM SYSTEM_RANGE(1, ?)", USERS_COUNT);
+        // у каждого фильма от 0 до 49 лайков
+        jdbcTemplate.update("INSERT INTO films_likes(film_id, user_id) "
+                + "SELECT f.x, u.x FROM SYSTEM_RANGE(1, ?) f JOIN SYSTEM_RANGE(1, 49) u ON u.x <= MOD(f.x, 50)",
+                FILMS_COUNT);
+        context.getBean(FilmDbStorage.class).warmUpLeaderboard();
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // девять запросов фильма из десяти, остальные - топ
+    @Benchmark
+    public int request() throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String path = random.nextInt(10) == 0
+                ? "/films/popular?count=10"
+                : "/films/" + (random.nextInt(FILMS_COUNT) + 1);
+
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + path)).build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(path + " returned " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+}